@@ -0,0 +1,30 @@
+package codes.matheus.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the regular JMH command line, except that results are written as JSON
+ * to {@code jmh-result.json} unless {@code -rf}/{@code -rff} choose otherwise, so every run leaves
+ * a file that can be compared with earlier ones.
+ */
+public final class BenchmarkRunner {
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        @NotNull CommandLineOptions cli = new CommandLineOptions(args);
+        @NotNull ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+
+        if (!cli.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue()) {
+            options.result("jmh-result.json");
+        }
+        new Runner(options.build()).run();
+    }
+}
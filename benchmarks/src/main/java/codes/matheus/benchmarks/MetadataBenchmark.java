@@ -0,0 +1,67 @@
+package codes.matheus.benchmarks;
+
+import codes.matheus.core.FileMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a {@link FileMetadata}: with the stat it needs, and from attributes already read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataBenchmark {
+    private SyntheticTree synthetic;
+    private Path path;
+    private File file;
+    private BasicFileAttributes attributes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        synthetic = new SyntheticTree(0, 0, 1);
+        path = synthetic.getRoot().resolve("f0.txt");
+        file = path.toFile();
+        attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        synthetic.close();
+    }
+
+    @Benchmark
+    public FileMetadata ofPath() throws IOException {
+        return FileMetadata.of(path);
+    }
+
+    @Benchmark
+    public FileMetadata fromFile() {
+        return new FileMetadata(file);
+    }
+
+    @Benchmark
+    public FileMetadata fromAttributes() {
+        return new FileMetadata(path, attributes);
+    }
+}
@@ -0,0 +1,71 @@
+package codes.matheus.benchmarks;
+
+import codes.matheus.core.Core;
+import codes.matheus.core.FileMetadata;
+import codes.matheus.datastructures.tree.NaryTree;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Path resolution of {@code cd} at depth, relative to the root and as an absolute path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NavigationBenchmark {
+    @Param({"2", "8"})
+    public int depth;
+
+    private SyntheticTree synthetic;
+    private Core core;
+    private NaryTree.Node<FileMetadata> root;
+    private String relative;
+    private String absolute;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        synthetic = new SyntheticTree(2, depth, 4);
+        core = new Core();
+        core.load(synthetic.getRoot().toString());
+        root = core.getCurrent();
+        relative = "cd " + synthetic.getDeepestPath();
+        absolute = "cd " + synthetic.getRoot().resolve(synthetic.getDeepestPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        synthetic.close();
+    }
+
+    @Benchmark
+    public @Nullable NaryTree.Node<FileMetadata> cdRelative() {
+        core.setCurrent(root);
+        core.getHandler().execute(relative);
+        return core.getCurrent();
+    }
+
+    @Benchmark
+    public @Nullable NaryTree.Node<FileMetadata> cdAbsolute() {
+        core.setCurrent(root);
+        core.getHandler().execute(absolute);
+        return core.getCurrent();
+    }
+}
@@ -0,0 +1,63 @@
+package codes.matheus.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A directory tree generated in a temporary directory: every directory down to {@code depth}
+ * holds {@code fanout} subdirectories named {@code d0}, {@code d1}, ... and {@code files} small
+ * files named {@code f0.txt}, {@code f1.txt}, ...
+ */
+final class SyntheticTree implements AutoCloseable {
+    private final @NotNull Path root;
+    private final int depth;
+
+    SyntheticTree(int fanout, int depth, int files) throws IOException {
+        this.root = Files.createTempDirectory("jfs-bench");
+        this.depth = depth;
+        populate(root, fanout, depth, files);
+    }
+
+    private static void populate(@NotNull Path directory, int fanout, int depth, int files) throws IOException {
+        for (int i = 0; i < files; i++) {
+            Files.writeString(directory.resolve("f" + i + ".txt"), "content " + i);
+        }
+        if (depth == 0) return;
+        for (int i = 0; i < fanout; i++) {
+            @NotNull Path child = Files.createDirectory(directory.resolve("d" + i));
+            populate(child, fanout, depth - 1, files);
+        }
+    }
+
+    // Getters
+
+    @NotNull Path getRoot() {
+        return root;
+    }
+
+    /**
+     * The relative path of the deepest directory along the first branch, e.g. {@code d0/d0/d0}.
+     */
+    @NotNull String getDeepestPath() {
+        @NotNull StringBuilder path = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            if (i > 0) path.append('/');
+            path.append("d0");
+        }
+        return path.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (@NotNull Stream<Path> paths = Files.walk(root)) {
+            for (@NotNull Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package codes.matheus.benchmarks;
+
+import codes.matheus.core.Core;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-tree traversals as the shell runs them: {@code find} and {@code analyze} executed through
+ * the command handler over a warm tree. Their output is discarded.
+ * <p>
+ * {@code analyze} caches a summary of every directory it has counted, so the plain run only
+ * revalidates the tree; {@code --top} always counts every file again and measures the full walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraversalBenchmark {
+    @Param({"6"})
+    public int fanout;
+
+    @Param({"4"})
+    public int depth;
+
+    private SyntheticTree synthetic;
+    private Core core;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        synthetic = new SyntheticTree(fanout, depth, 8);
+        core = new Core();
+        core.load(synthetic.getRoot().toString());
+
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        core.getHandler().execute("analyze");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        synthetic.close();
+    }
+
+    @Benchmark
+    public void findSubstring() {
+        core.getHandler().execute("find f7");
+    }
+
+    @Benchmark
+    public void findGlob() {
+        core.getHandler().execute("find --glob d1*");
+    }
+
+    @Benchmark
+    public void analyze() {
+        core.getHandler().execute("analyze --top 10");
+    }
+
+    @Benchmark
+    public void analyzeCached() {
+        core.getHandler().execute("analyze");
+    }
+}
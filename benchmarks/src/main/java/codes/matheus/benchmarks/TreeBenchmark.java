@@ -0,0 +1,117 @@
+package codes.matheus.benchmarks;
+
+import codes.matheus.core.BuildTree;
+import codes.matheus.core.FileMetadata;
+import codes.matheus.datastructures.tree.NaryTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and listing a synthetic tree through {@link BuildTree}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBenchmark {
+    @Param({"4"})
+    public int fanout;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"16"})
+    public int files;
+
+    private SyntheticTree synthetic;
+    private BuildTree warm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        synthetic = new SyntheticTree(fanout, depth, files);
+        warm = new BuildTree();
+        warm.load(synthetic.getRoot().toString());
+        expand(warm);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        synthetic.close();
+    }
+
+    /**
+     * Loading the root, which lists its first level only.
+     */
+    @Benchmark
+    public @Nullable NaryTree.Node<FileMetadata> load() {
+        @NotNull BuildTree build = new BuildTree();
+        build.load(synthetic.getRoot().toString());
+        return build.getRoot();
+    }
+
+    /**
+     * Loading and listing every directory of the tree from scratch.
+     */
+    @Benchmark
+    public int loadAndExpand() {
+        @NotNull BuildTree build = new BuildTree();
+        build.load(synthetic.getRoot().toString());
+        return expand(build);
+    }
+
+    /**
+     * Fetching an already listed directory that has not changed, which only checks its mtime.
+     */
+    @Benchmark
+    public int fetchChildrenUnchanged() {
+        @NotNull NaryTree.Node<FileMetadata> root = Objects.requireNonNull(warm.getRoot());
+        warm.fetchChildren(root);
+        return root.getChildren().size();
+    }
+
+    /**
+     * Re-listing a directory and diffing the listing against its children.
+     */
+    @Benchmark
+    public int refresh() {
+        @NotNull NaryTree.Node<FileMetadata> root = Objects.requireNonNull(warm.getRoot());
+        warm.refresh(root);
+        return root.getChildren().size();
+    }
+
+    private static int expand(@NotNull BuildTree build) {
+        int nodes = 0;
+        @NotNull Deque<NaryTree.Node<FileMetadata>> stack = new ArrayDeque<>();
+        stack.push(Objects.requireNonNull(build.getRoot()));
+        while (!stack.isEmpty()) {
+            @NotNull NaryTree.Node<FileMetadata> node = stack.pop();
+            build.fetchChildren(node);
+            for (@NotNull NaryTree.Node<FileMetadata> child : node.getChildren()) {
+                nodes++;
+                if (child.getValue().isDirectory()) stack.push(child);
+            }
+        }
+        return nodes;
+    }
+}
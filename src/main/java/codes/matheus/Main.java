@@ -1,11 +1,69 @@
 package codes.matheus;
 
+import codes.matheus.cli.BatchRunner;
 import codes.matheus.core.Core;
+import codes.matheus.util.Colors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public final class Main {
     public static void main(String[] args) {
+        @Nullable String script;
+        try {
+            script = script(args);
+        } catch (IOException e) {
+            System.err.println("Error reading the script: " + e.getLocalizedMessage());
+            System.exit(2);
+            return;
+        }
+
+        // escape codes are only useful on a terminal; Java 17 cannot tell which stream is redirected
+        if (System.console() == null) {
+            Colors.setEnabled(false);
+        }
+
         @NotNull Core core = new Core();
-        core.run();
+        if (script == null) {
+            core.run(stdinIsTerminal());
+            return;
+        }
+        System.exit(core.runBatch(BatchRunner.split(script)) ? 0 : 1);
+    }
+
+    /**
+     * The script to run in batch mode: the argument of {@code -c}, or the contents of the file
+     * named by {@code --script} or given as the only argument. Returns {@code null} for a session
+     * reading standard input, typed or piped.
+     */
+    private static @Nullable String script(String @NotNull [] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            boolean last = i + 1 == args.length;
+            if (args[i].equals("-c") && !last) return args[i + 1];
+            if (args[i].equals("--script") && !last) return Files.readString(Path.of(args[i + 1]));
+            if (args[i].equals("-c") || args[i].equals("--script")) {
+                throw new IOException(args[i] + " needs an argument");
+            }
+        }
+        if (args.length == 1 && !args[0].startsWith("-")) {
+            return Files.readString(Path.of(args[0]));
+        }
+        return null;
+    }
+
+    /**
+     * Whether standard input is a terminal. Java 17 only tells whether both standard streams are,
+     * so on Linux this checks where descriptor 0 points, and elsewhere falls back to the console.
+     */
+    private static boolean stdinIsTerminal() {
+        try {
+            @NotNull String target = Files.readSymbolicLink(Path.of("/proc/self/fd/0")).toString();
+            return target.startsWith("/dev/pts/") || target.startsWith("/dev/tty");
+        } catch (IOException | UnsupportedOperationException e) {
+            return System.console() != null;
+        }
     }
-}
\ No newline at end of file
+}
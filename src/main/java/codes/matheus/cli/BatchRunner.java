@@ -0,0 +1,192 @@
+package codes.matheus.cli;
+
+import codes.matheus.core.Core;
+import codes.matheus.core.TreeWatcher;
+import codes.matheus.util.ThreadOutput;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a whole script of commands without a prompt. Every line is parsed before anything runs, so
+ * a typo fails the script instead of leaving it half done. Consecutive commands that only read
+ * (listings, searches, analyses) run concurrently; each one's output is captured separately and
+ * printed in script order, so the result reads exactly as if they had run one after another.
+ * Anything else runs alone, in order, after the commands before it have finished. Changes seen by
+ * a running {@link TreeWatcher} are applied before each of these steps, never during one.
+ */
+public final class BatchRunner {
+    private static final @NotNull Set<String> CONCURRENT = Set.of("ls", "pwd", "find", "stats", "analyze", "dedupe");
+
+    private final @NotNull Core core;
+    private final @NotNull CommandHandler handler;
+    private final int threads;
+
+    public BatchRunner(@NotNull Core core, int threads) {
+        this.core = core;
+        this.handler = core.getHandler();
+        this.threads = threads;
+    }
+
+    /**
+     * Splits a script into command lines. Commands are separated by newlines or {@code ;}, an
+     * unquoted {@code #} at the start of a word comments out the rest of its line, and blank
+     * commands are skipped. Quotes and backslashes work as in the {@link Command} tokenizer, so a
+     * quoted or escaped {@code ;} or {@code #} stays part of its command; a quote left open ends
+     * with its line.
+     */
+    public static @NotNull List<String> split(@NotNull String script) {
+        @NotNull List<String> lines = new ArrayList<>();
+        int length = script.length();
+        int start = 0;
+        char quote = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = script.charAt(i);
+            boolean escapes = i + 1 < length && !isLineBreak(script.charAt(i + 1));
+            if (isLineBreak(c)) {
+                quote = 0;
+                add(lines, script, start, i);
+                start = i + 1;
+            } else if (quote == '\'') {
+                if (c == '\'') quote = 0;
+            } else if (quote == '"') {
+                if (c == '\\' && escapes && (script.charAt(i + 1) == '"' || script.charAt(i + 1) == '\\')) {
+                    i++;
+                } else if (c == '"') {
+                    quote = 0;
+                }
+            } else if (c == '\\') {
+                if (escapes) i++;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ';') {
+                add(lines, script, start, i);
+                start = i + 1;
+            } else if (c == '#' && (i == start || Character.isWhitespace(script.charAt(i - 1)))) {
+                add(lines, script, start, i);
+                while (i + 1 < length && !isLineBreak(script.charAt(i + 1))) i++;
+                start = i + 1;
+            }
+        }
+        add(lines, script, start, length);
+        return lines;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static void add(@NotNull List<String> lines, @NotNull String script, int start, int end) {
+        @NotNull String line = script.substring(start, end).strip();
+        if (!line.isEmpty()) lines.add(line);
+    }
+
+    /**
+     * Runs {@code lines} in order, stopping after {@code exit}. A command that fails does not stop
+     * the ones after it.
+     *
+     * @return {@code false} if some line is not a known command, in which case nothing runs, or
+     * if some command reported an error
+     */
+    public boolean run(@NotNull List<String> lines) {
+        @NotNull List<Command> commands = new ArrayList<>(lines.size());
+        boolean valid = true;
+        for (int i = 0; i < lines.size(); i++) {
+            @NotNull Command command = Command.create(lines.get(i));
+            if (command.getType() == Command.Type.UNKNOWN) {
+                System.err.println("line " + (i + 1) + ": unknown command: " + lines.get(i));
+                valid = false;
+            }
+            commands.add(command);
+        }
+        if (!valid) return false;
+
+        ThreadOutput.install();
+        @NotNull ExecutorService pool = Executors.newFixedThreadPool(threads);
+        boolean succeeded = true;
+        try {
+            int i = 0;
+            while (i < commands.size()) {
+                applyPending();
+                @NotNull Command command = commands.get(i);
+                if (!CONCURRENT.contains(command.getAction())) {
+                    succeeded &= handler.execute(command);
+                    if (command.getAction().equals("exit")) break;
+                    i++;
+                    continue;
+                }
+
+                int end = i + 1;
+                while (end < commands.size() && CONCURRENT.contains(commands.get(end).getAction())) end++;
+                succeeded &= runConcurrently(pool, commands.subList(i, end));
+                i = end;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return succeeded;
+    }
+
+    private void applyPending() {
+        @Nullable TreeWatcher watcher = core.getWatcher();
+        if (watcher != null) {
+            watcher.applyPending();
+        }
+    }
+
+    /**
+     * Runs the read-only commands of {@code wave} together and prints their output in order.
+     *
+     * @return {@code false} if any of them failed
+     */
+    private boolean runConcurrently(@NotNull ExecutorService pool, @NotNull List<Command> wave) {
+        @NotNull List<Future<Captured>> captured = new ArrayList<>(wave.size() - 1);
+        for (@NotNull Command command : wave.subList(1, wave.size())) {
+            captured.add(pool.submit(() -> {
+                @NotNull Captured result = new Captured();
+                ThreadOutput.capture(result.output, () -> result.succeeded = handler.execute(command));
+                return result;
+            }));
+        }
+
+        // the first command's output comes first anyway, so it can go straight to stdout
+        boolean succeeded = handler.execute(wave.get(0));
+        System.out.flush();
+
+        for (int i = 0; i < captured.size(); i++) {
+            try {
+                @NotNull Captured result = captured.get(i).get();
+                result.output.writeTo(System.out);
+                succeeded &= result.succeeded;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                System.err.println(wave.get(i + 1).getInput() + ": " + e.getCause());
+                succeeded = false;
+            } catch (IOException e) {
+                System.err.println("could not write output: " + e.getLocalizedMessage());
+                succeeded = false;
+            }
+            System.out.flush();
+        }
+        return succeeded;
+    }
+
+    // Classes
+
+    private static final class Captured {
+        private final @NotNull ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private boolean succeeded;
+    }
+}
@@ -1,52 +1,73 @@
 package codes.matheus.cli;
 
-import codes.matheus.util.Colors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public final class Command {
 
     // static initializers
 
     public static @NotNull Command create(@NotNull String input) {
-        @NotNull CommandParsed cmd = Parser.parse(input);
-        @NotNull Type type = Type.fromAction(cmd.action);
-        return new Command(input, type, cmd.action, cmd.args, cmd.flags);
+        return Parser.parse(input);
     }
 
     private static final @NotNull Map<Command.Type, List<String>> commands = new HashMap<>();
+    private static final @NotNull Map<String, Integer> ids = new HashMap<>();
+    private static final @NotNull List<Type> types = new ArrayList<>();
 
     public static @NotNull Map<Type, List<String>> getCommands() {
         return commands;
     }
 
     static {
-        commands.put(Type.SYSTEM,     List.of("exit", "clear"));
+        commands.put(Type.SYSTEM,     List.of("exit", "clear", "watch", "prefetch", "metrics"));
         commands.put(Type.NAVIGATION, List.of("cd", "ls", "find", "pwd"));
-        commands.put(Type.IO,         List.of("mkdir", "mv", "rm", "print", "rename"));
+        commands.put(Type.IO,         List.of("mkdir", "mv", "cp", "rm", "print", "cat", "rename"));
         commands.put(Type.ENCODING,   List.of("crypto", "zip", "unzip"));
-        commands.put(Type.ANALYSIS,   List.of("analyze", "stats"));
+        commands.put(Type.ANALYSIS,   List.of("analyze", "stats", "dedupe"));
+
+        for (@NotNull Map.Entry<Type, List<String>> entry : commands.entrySet()) {
+            for (@NotNull String action : entry.getValue()) {
+                ids.put(action, types.size());
+                types.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * The dense id of {@code action}, from {@code 0} to {@link #getActionCount()} - 1, or
+     * {@code -1} if it is not a known action. Ids index dispatch tables directly.
+     */
+    public static int getActionId(@NotNull String action) {
+        @Nullable Integer id = ids.get(action);
+        return id != null ? id : -1;
+    }
+
+    public static int getActionCount() {
+        return types.size();
     }
 
     // Objects
 
     private final @NotNull String input;
-    private final @NotNull Type type;
     private final @NotNull String action;
-    private final @Nullable List<String> args;
-    private final @Nullable Map<String, String> flags;
+    private final int actionId;
+    private final @NotNull String @NotNull [] args;
+    // per argument, the glob it spells if it holds an unquoted metacharacter, otherwise null
+    private final @Nullable String @NotNull [] patterns;
+    // keys and values interleaved, in order of first appearance
+    private final @NotNull String @NotNull [] flags;
 
     // Constructor
 
-    Command(@NotNull String input, @NotNull Type type, @NotNull String action, @Nullable List<String> args, @Nullable Map<String, String> flags) {
+    Command(@NotNull String input, @NotNull String action, @NotNull String @NotNull [] args, @Nullable String @NotNull [] patterns, @NotNull String @NotNull [] flags) {
         this.input = input;
-        this.type = type;
         this.action = action;
+        this.actionId = getActionId(action);
         this.args = args;
+        this.patterns = patterns;
         this.flags = flags;
     }
 
@@ -57,42 +78,71 @@ public final class Command {
     }
 
     public @NotNull Type getType() {
-        return type;
+        return actionId >= 0 ? types.get(actionId) : Type.UNKNOWN;
     }
 
     public @NotNull String getAction() {
         return action;
     }
 
+    public int getActionId() {
+        return actionId;
+    }
+
     public @NotNull String getArg(int index) {
-        return (args != null && index >= 0 && index < args.size()) ? args.get(index) : "";
+        return (index >= 0 && index < args.length) ? args[index] : "";
+    }
+
+    /**
+     * The argument at {@code index} as a glob pattern if it holds an unquoted {@code *}, {@code ?}
+     * or {@code [}, with every metacharacter that was quoted or escaped escaped again by a
+     * backslash; {@code null} if the argument is only a name.
+     */
+    public @Nullable String getPattern(int index) {
+        return (index >= 0 && index < patterns.length) ? patterns[index] : null;
     }
 
     public @NotNull String getFlag(@NotNull String key) {
-        return (flags != null) ? flags.get(key) : "";
+        int index = indexOfFlag(flags, flags.length, key);
+        return index >= 0 ? flags[index + 1] : "";
     }
 
     public int getArgsSize() {
-        return args != null ? args.size() : -1;
+        return args.length;
     }
 
     public boolean hasAnyArg() {
-        return args != null && !args.isEmpty();
+        return args.length > 0;
     }
 
     public boolean hasAnyFlag() {
-        return flags != null && !flags.isEmpty();
+        return flags.length > 0;
     }
 
     public boolean hasFlag(@NotNull String key) {
-        return flags != null && flags.containsKey(key);
+        return indexOfFlag(flags, flags.length, key) >= 0;
+    }
+
+    public @NotNull Set<String> getFlagKeys() {
+        @NotNull Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < flags.length; i += 2) {
+            keys.add(flags[i]);
+        }
+        return keys;
+    }
+
+    private static int indexOfFlag(@NotNull String @NotNull [] flags, int length, @NotNull String key) {
+        for (int i = 0; i < length; i += 2) {
+            if (flags[i].equals(key)) return i;
+        }
+        return -1;
     }
 
     @Override
     public @NotNull String toString() {
         return "Command=" + input +
-                "args=" + args +
-                "flags=" + flags;
+                "args=" + Arrays.toString(args) +
+                "flags=" + Arrays.toString(flags);
     }
 
     @Override
@@ -109,57 +159,201 @@ public final class Command {
 
     // Classes
 
-    private static final class CommandParsed {
-        private final @NotNull String action;
-        private final @Nullable List<String> args;
-        private final @Nullable Map<String, String> flags;
+    /**
+     * A single-pass tokenizer in the spirit of a POSIX shell: whitespace separates tokens, single
+     * quotes keep everything literally, double quotes keep everything but {@code \"} and
+     * {@code \\}, a backslash outside quotes escapes the next character, and quoted and unquoted
+     * pieces next to each other form one token. Tokens that begin with an unquoted {@code --} are
+     * flags, taking their value from {@code --flag=value} or from the next token unless that is a
+     * flag too or the flag is a switch, which never takes one; a flag without a value is
+     * {@code "true"}. An argument with an unquoted {@code *}, {@code ?} or {@code [} also keeps
+     * its glob form, in which the quoted or escaped metacharacters stay escaped, so
+     * {@code 'data[1]'*} matches only names starting with {@code data[1]}.
+     * <p>
+     * Each thread keeps its scratch buffers, so a parse allocates only the token strings and the
+     * exactly-sized arrays of the resulting command, and tokens without quotes or escapes are
+     * plain substrings of the input.
+     */
+    private static final class Parser {
+        private static final @NotNull ThreadLocal<Parser> PARSERS = ThreadLocal.withInitial(Parser::new);
 
-        private CommandParsed(@NotNull String action, @Nullable List<String> args, @Nullable Map<String, String> flags) {
-            this.action = action;
-            this.args = args;
-            this.flags = flags;
-        }
-    }
+        private static final @NotNull String METACHARACTERS = "*?[]\\";
+        // flags that are only on or off, so "ls --long docs" lists docs
+        private static final @NotNull Set<String> SWITCHES = Set.of("--long", "--all", "--compact", "--overwrite", "--reset");
+        private static final @Nullable String @NotNull [] NO_PATTERNS = new String[0];
 
-    private static final class Parser {
-        private static final @NotNull Pattern PATTERN = Pattern.compile("[^\\s\"']+|\"([^\"]*)\"|'([^']*)'");
+        private @NotNull String @NotNull [] tokens = new String[8];
+        private @Nullable String @NotNull [] globs = new String[8];
+        private boolean @NotNull [] flagged = new boolean[8];
+        private int count;
+        private final @NotNull StringBuilder token = new StringBuilder();
+        // the current token as a glob, kept only once it has quotes or escapes
+        private final @NotNull StringBuilder pattern = new StringBuilder();
 
         private Parser() {
-            throw new UnsupportedOperationException();
         }
 
-        private static @NotNull CommandParsed parse(@NotNull String input) {
-            if (input.trim().isEmpty()) {
-                return new CommandParsed("", new ArrayList<>(), new HashMap<>());
-            }
+        private static @NotNull Command parse(@NotNull String input) {
+            return PARSERS.get().command(input);
+        }
 
-            @NotNull List<String> tokens = new ArrayList<>();
-            @NotNull Matcher matcher = PATTERN.matcher(input);
+        private @NotNull Command command(@NotNull String input) {
+            tokenize(input);
+            try {
+                if (count == 0) {
+                    return new Command(input, "", new String[0], NO_PATTERNS, new String[0]);
+                }
 
-            while (matcher.find()) {
-                @NotNull String match = matcher.group(1) != null ? matcher.group(1) :
-                        (matcher.group(2) != null ? matcher.group(2) : matcher.group());
-                tokens.add(match);
-            }
+                @NotNull String action = tokens[0].toLowerCase();
+                int arguments = 0;
+                for (int i = 1; i < count; i++) {
+                    if (!flagged[i]) arguments++;
+                }
 
-            @NotNull String action = tokens.remove(0).toLowerCase();
-            @NotNull List<String> args = new ArrayList<>();
-            @NotNull Map<String, String> flags = new HashMap<>();
+                @NotNull String[] args = new String[arguments];
+                @Nullable String[] patterns = NO_PATTERNS;
+                @NotNull String[] flags = new String[2 * (count - 1 - arguments)];
+                int a = 0;
+                int f = 0;
+                for (int i = 1; i < count; i++) {
+                    @NotNull String t = tokens[i];
+                    if (!flagged[i]) {
+                        if (globs[i] != null) {
+                            if (patterns == NO_PATTERNS) patterns = new String[arguments];
+                            patterns[a] = globs[i];
+                        }
+                        args[a++] = t;
+                        continue;
+                    }
 
-            for (int i = 0; i < tokens.size(); i++) {
-                @NotNull String t = tokens.get(i);
-                if (t.startsWith("--")) {
-                    if (i + 1 < tokens.size() && !tokens.get(i + 1).startsWith("--")) {
-                        flags.put(t, tokens.get(i + 1));
+                    @NotNull String key;
+                    @NotNull String value;
+                    int equals = t.indexOf('=');
+                    if (equals > 2) {
+                        key = t.substring(0, equals);
+                        value = t.substring(equals + 1);
+                    } else if (i + 1 < count && !flagged[i + 1] && !SWITCHES.contains(t)) {
+                        key = t;
+                        value = tokens[++i];
+                    } else {
+                        key = t;
+                        value = "true";
+                    }
+
+                    int index = indexOfFlag(flags, f, key);
+                    if (index >= 0) {
+                        flags[index + 1] = value;
+                    } else {
+                        flags[f++] = key;
+                        flags[f++] = value;
+                    }
+                }
+                // a value taken from the next token, or a repeated key, leaves slots unused
+                if (a < args.length) args = Arrays.copyOf(args, a);
+                if (a < patterns.length) patterns = Arrays.copyOf(patterns, a);
+                if (f < flags.length) flags = Arrays.copyOf(flags, f);
+                return new Command(input, action, args, patterns, flags);
+            } finally {
+                Arrays.fill(tokens, 0, count, null);
+                Arrays.fill(globs, 0, count, null);
+            }
+        }
+
+        private void tokenize(@NotNull String input) {
+            count = 0;
+            int length = input.length();
+            int i = 0;
+
+            while (i < length) {
+                while (i < length && Character.isWhitespace(input.charAt(i))) i++;
+                if (i == length) break;
+
+                int start = i;
+                boolean flag = input.startsWith("--", i);
+                boolean plain = true;
+                boolean globbed = false;
+                token.setLength(0);
+                pattern.setLength(0);
+
+                while (i < length) {
+                    char c = input.charAt(i);
+                    if (Character.isWhitespace(c)) break;
+
+                    if (c != '\'' && c != '"' && c != '\\') {
+                        if (c == '*' || c == '?' || c == '[') globbed = true;
+                        if (!plain) {
+                            token.append(c);
+                            pattern.append(c);
+                        }
                         i++;
+                        continue;
+                    }
+
+                    if (plain) {
+                        // a plain prefix holds no backslashes, so it is its own glob
+                        token.append(input, start, i);
+                        pattern.append(input, start, i);
+                        plain = false;
+                    }
+                    if (c == '\\') {
+                        literal(i + 1 < length ? input.charAt(i + 1) : c);
+                        i += 2;
+                    } else if (c == '\'') {
+                        int close = input.indexOf('\'', i + 1);
+                        int end = close < 0 ? length : close;
+                        for (int j = i + 1; j < end; j++) {
+                            literal(input.charAt(j));
+                        }
+                        i = end + 1;
                     } else {
-                        flags.put(t, "true");
+                        i = quoted(input, i + 1);
                     }
+                }
+
+                @NotNull String value = plain ? input.substring(start, Math.min(i, length)) : token.toString();
+                add(value, globbed ? (plain ? value : pattern.toString()) : null, flag);
+            }
+        }
+
+        /**
+         * Appends the double-quoted text starting at {@code i} to the current token and returns the
+         * index after the closing quote; an unterminated quote runs to the end of the input.
+         */
+        private int quoted(@NotNull String input, int i) {
+            int length = input.length();
+            while (i < length) {
+                char c = input.charAt(i);
+                if (c == '"') return i + 1;
+                if (c == '\\' && i + 1 < length && (input.charAt(i + 1) == '"' || input.charAt(i + 1) == '\\')) {
+                    literal(input.charAt(i + 1));
+                    i += 2;
                 } else {
-                    args.add(t);
+                    literal(c);
+                    i++;
                 }
             }
-            return new CommandParsed(action, args, flags);
+            return length;
+        }
+
+        /**
+         * Appends a quoted or escaped character, which a glob must match literally.
+         */
+        private void literal(char c) {
+            token.append(c);
+            if (METACHARACTERS.indexOf(c) >= 0) pattern.append('\\');
+            pattern.append(c);
+        }
+
+        private void add(@NotNull String value, @Nullable String glob, boolean flag) {
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+                globs = Arrays.copyOf(globs, count * 2);
+                flagged = Arrays.copyOf(flagged, count * 2);
+            }
+            tokens[count] = value;
+            globs[count] = glob;
+            flagged[count] = flag;
+            count++;
         }
     }
 
@@ -172,12 +366,10 @@ public final class Command {
         UNKNOWN;
 
         public static @NotNull Type fromAction(@NotNull String action) {
-            for (@NotNull Map.Entry<Type, List<String>> entry : getCommands().entrySet()) {
-                if (entry.getValue().contains(action.toLowerCase())) {
-                    return entry.getKey();
-                }
+            int id = getActionId(action.toLowerCase());
+            if (id >= 0) {
+                return types.get(id);
             }
-            System.out.println(Colors.format("Type of command unknown: " + action, Colors.RED));
             return UNKNOWN;
         }
     }
@@ -3,6 +3,10 @@ package codes.matheus.cli;
 import codes.matheus.core.BuildTree;
 import codes.matheus.core.Core;
 import codes.matheus.core.FileOperations;
+import codes.matheus.util.Colors;
+import codes.matheus.util.Metrics;
+import codes.matheus.util.OutputSink;
+import codes.matheus.util.ThreadOutput;
 import org.jetbrains.annotations.NotNull;
 
 public final class CommandHandler {
@@ -14,10 +18,31 @@ public final class CommandHandler {
         this.operations = new FileOperations(core, build);
     }
 
-    public void execute(@NotNull String input) {
-        @NotNull Command command = Command.create(input);
-        if (command.getType().equals(Command.Type.UNKNOWN)) return;
+    public boolean execute(@NotNull String input) {
+        return execute(Command.create(input));
+    }
+
+    /**
+     * Runs {@code command} and flushes its output.
+     *
+     * @return {@code false} if the command is unknown or reported an error
+     */
+    public boolean execute(@NotNull Command command) {
+        @NotNull OutputSink sink = OutputSink.open(ThreadOutput.current());
+        if (command.getType().equals(Command.Type.UNKNOWN)) {
+            sink.println("Type of command unknown: " + command.getAction(), Colors.RED);
+            sink.flush();
+            return false;
+        }
 
-        operations.execute(command);
+        long errors = sink.getErrorCount();
+        long start = System.nanoTime();
+        try {
+            operations.execute(command);
+        } finally {
+            sink.flush();
+        }
+        Metrics.command(command.getAction()).record(System.nanoTime() - start);
+        return sink.getErrorCount() == errors;
     }
 }
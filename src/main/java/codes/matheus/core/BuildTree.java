@@ -1,13 +1,49 @@
 package codes.matheus.core;
 
 import codes.matheus.datastructures.tree.NaryTree;
+import codes.matheus.util.Metrics;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 public final class BuildTree {
     private @Nullable NaryTree<FileMetadata> tree;
+    private @Nullable NaryTree.Node<FileMetadata> root;
+
+    /**
+     * Absolute path of every node currently in the tree. Kept in sync by {@link #fetchChildren}
+     * and {@link #clear}, so resolving a known path never has to search the tree.
+     */
+    private final @NotNull Map<String, NaryTree.Node<FileMetadata>> index = new ConcurrentHashMap<>();
+
+    /**
+     * Modification time (in nanoseconds) each expanded directory had when it was last listed.
+     */
+    private final @NotNull Map<String, Long> listings = new ConcurrentHashMap<>();
+
+    /**
+     * Hidden entries (names starting with a dot) of each listed directory, from the same listing.
+     * They never become nodes, so traversals skip them; only {@code ls --all} asks for them.
+     */
+    private final @NotNull Map<String, List<FileMetadata>> hidden = new ConcurrentHashMap<>();
+
+    private final @NotNull List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private @Nullable NameIndex nameIndex;
+    private volatile @Nullable Prefetcher prefetcher;
 
     public BuildTree() {
     }
@@ -16,41 +52,512 @@ public final class BuildTree {
         return tree;
     }
 
+    public @Nullable NaryTree.Node<FileMetadata> getRoot() {
+        return root;
+    }
+
     public void load(@NotNull String rootPath) {
-        @NotNull File root = new File(rootPath);
-        if (!root.exists()) {
+        @NotNull File rootFile = new File(rootPath);
+        if (!rootFile.exists()) {
             return;
         }
 
-        @NotNull FileMetadata rootMeta = new FileMetadata(root);
+        @NotNull FileMetadata rootMeta = new FileMetadata(rootFile);
+        dropNameIndex();
         this.tree = new NaryTree<>(rootMeta);
-        @Nullable NaryTree.Node<FileMetadata> rootNode = tree.search(rootMeta);
+        this.root = tree.search(rootMeta);
+        index.clear();
+        listings.clear();
+        hidden.clear();
 
-        if (rootNode != null && root.isDirectory()) {
-            fetchChildren(rootNode);
+        if (root != null) {
+            index.put(rootMeta.getAbsolutePath(), root);
+            if (rootMeta.isDirectory()) {
+                fetchChildren(root);
+            }
         }
     }
 
+    public @Nullable NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Builds the trigram name index over every loaded node and keeps it up to date from then on.
+     */
+    public synchronized @NotNull NameIndex enableNameIndex() {
+        if (nameIndex == null) {
+            @NotNull NameIndex created = new NameIndex();
+            addListener(created);
+            created.addAll(index.values());
+            this.nameIndex = created;
+        }
+        return nameIndex;
+    }
+
+    private void dropNameIndex() {
+        if (nameIndex != null) {
+            removeListener(nameIndex);
+            this.nameIndex = null;
+        }
+    }
+
+    public @Nullable Prefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Starts listing subdirectories in the background as soon as their parent is listed, up to
+     * {@code depth} levels down with at most {@code concurrency} listings in flight. Replaces any
+     * prefetcher already running.
+     */
+    public synchronized @NotNull Prefetcher enablePrefetch(int depth, int concurrency) {
+        disablePrefetch();
+        @NotNull Prefetcher created = new Prefetcher(depth, concurrency);
+        this.prefetcher = created;
+        if (root != null) {
+            created.expanded(this, root);
+        }
+        return created;
+    }
+
+    public synchronized void disablePrefetch() {
+        @Nullable Prefetcher current = prefetcher;
+        if (current != null) {
+            this.prefetcher = null;
+            current.shutdown();
+        }
+    }
+
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns every directory node that has been listed at least once.
+     */
+    public @NotNull List<NaryTree.Node<FileMetadata>> getListedDirectories() {
+        @NotNull List<NaryTree.Node<FileMetadata>> nodes = new ArrayList<>(listings.size());
+        for (@NotNull String path : listings.keySet()) {
+            @Nullable NaryTree.Node<FileMetadata> node = index.get(path);
+            if (node != null) nodes.add(node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the modification time {@code directory} had when it was last listed, or
+     * {@code null} if it has not been listed.
+     */
+    public @Nullable Long getListedAt(@NotNull NaryTree.Node<FileMetadata> directory) {
+        return listings.get(directory.getValue().getAbsolutePath());
+    }
+
+    // Snapshot restore, see TreeSnapshot
+
+    @NotNull NaryTree.Node<FileMetadata> restoreRoot(@NotNull FileMetadata rootMeta) {
+        dropNameIndex();
+        this.tree = new NaryTree<>(rootMeta);
+        this.root = Objects.requireNonNull(tree.search(rootMeta));
+        index.clear();
+        listings.clear();
+        hidden.clear();
+        index.put(rootMeta.getAbsolutePath(), root);
+        return root;
+    }
+
+    @NotNull NaryTree.Node<FileMetadata> restoreChild(@NotNull NaryTree.Node<FileMetadata> parentNode, @NotNull FileMetadata meta) {
+        @NotNull NaryTree<FileMetadata> restoring = Objects.requireNonNull(tree);
+        @NotNull List<NaryTree.Node<FileMetadata>> children = parentNode.getChildren();
+        restoring.insert(parentNode, meta);
+        @NotNull NaryTree.Node<FileMetadata> node = children.get(children.size() - 1);
+        Metrics.Counter.NODES_CREATED.increment();
+        index.put(meta.getAbsolutePath(), node);
+        for (@NotNull Listener listener : listeners) {
+            listener.onInserted(node);
+        }
+        return node;
+    }
+
+    void restoreListing(@NotNull NaryTree.Node<FileMetadata> directory, long listedAt) {
+        listings.put(directory.getValue().getAbsolutePath(), listedAt);
+    }
+
+    /**
+     * Returns the hidden entries of {@code directory} as of its last listing, listing it again if
+     * they are not known (e.g. after a snapshot restore). The returned list is not modified
+     * afterwards; a new listing replaces it.
+     */
+    public @NotNull List<FileMetadata> getHiddenEntries(@NotNull NaryTree.Node<FileMetadata> directory) {
+        @NotNull String absolutePath = directory.getValue().getAbsolutePath();
+        @Nullable List<FileMetadata> entries = hidden.get(absolutePath);
+        if (entries == null) {
+            refresh(directory);
+            entries = hidden.get(absolutePath);
+        }
+        return entries != null ? entries : List.of();
+    }
+
+    /**
+     * Returns the loaded node for {@code absolutePath}, or {@code null} if that path has not been
+     * fetched into the tree yet.
+     */
+    public @Nullable NaryTree.Node<FileMetadata> find(@NotNull String absolutePath) {
+        return index.get(absolutePath);
+    }
+
+    /**
+     * Returns the parent of {@code node}, or {@code null} for the root. The parent path is derived
+     * from the node's own path, so this does not touch the disk.
+     */
+    public @Nullable NaryTree.Node<FileMetadata> getParent(@NotNull NaryTree.Node<FileMetadata> node) {
+        if (node == root) return null;
+        @Nullable String parentPath = new File(node.getValue().getAbsolutePath()).getParent();
+        return parentPath != null ? index.get(parentPath) : null;
+    }
+
+    /**
+     * Lists {@code parentNode} and merges the listing into its children. A directory is listed
+     * again only when its modification time differs from the one recorded at its last listing;
+     * the new listing is diffed against the existing children, so unchanged entries and the
+     * expanded subtrees of surviving directories are kept as they are.
+     * <p>
+     * Safe to call from several threads: callers on the same node are serialized, while listings
+     * of different nodes run in parallel and only the changes to the shared tree are locked.
+     */
     public void fetchChildren(@NotNull NaryTree.Node<FileMetadata> parentNode) {
-        if (!parentNode.getChildren().isEmpty() || tree == null) {
-            return;
+        synchronized (parentNode) {
+            if (tree == null) {
+                return;
+            }
+
+            @NotNull String absolutePath = parentNode.getValue().getAbsolutePath();
+            @Nullable Long listedAt = listings.get(absolutePath);
+            @Nullable Prefetcher prefetching = prefetcher;
+
+            @NotNull Path path = Path.of(absolutePath);
+            long modified;
+            try {
+                Metrics.Counter.STAT_CALLS.increment();
+                modified = Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+            } catch (IOException e) {
+                if (prefetching != null) prefetching.discard(absolutePath);
+                return;
+            }
+
+            // the directory's own node is not replaced by listing its parent again
+            @NotNull FileMetadata own = parentNode.getValue();
+            if (own.update(own.getSize(), modified)) {
+                for (@NotNull Listener listener : listeners) {
+                    listener.onUpdated(parentNode);
+                }
+            }
+
+            // a prefetched listing is only used while the directory still looks as it did then
+            @Nullable Listing listing = prefetching != null ? prefetching.take(absolutePath, modified) : null;
+            if (listedAt != null && listedAt == modified) {
+                return;
+            }
+            if (listing == null) {
+                listing = readListing(path, modified);
+                if (listing == null) {
+                    return;
+                }
+            }
+
+            boolean changed;
+            synchronized (tree) {
+                changed = merge(parentNode, listing.entries);
+            }
+            if (changed) {
+                invalidateTotals(parentNode);
+            }
+            hidden.put(absolutePath, listing.hidden);
+            if (listings.put(absolutePath, listing.modified) == null) {
+                for (@NotNull Listener listener : listeners) {
+                    listener.onListed(parentNode);
+                }
+            }
+            if (prefetching != null) {
+                prefetching.expanded(this, parentNode);
+            }
+        }
+    }
+
+    /**
+     * Fetches the children of {@code parentNode} and returns a copy of them taken under the node's
+     * lock, which stays safe to iterate while other threads fetch or change the same directory.
+     */
+    public @NotNull List<NaryTree.Node<FileMetadata>> listChildren(@NotNull NaryTree.Node<FileMetadata> parentNode) {
+        fetchChildren(parentNode);
+        synchronized (parentNode) {
+            return new ArrayList<>(parentNode.getChildren());
         }
+    }
 
-        @NotNull String path = parentNode.getValue().getAbsolutePath();
-        @NotNull File parentFile = new File(path);
-        @NotNull File[] children = parentFile.listFiles();
+    /**
+     * Reads the listing of {@code path} without touching the tree, or returns {@code null} if the
+     * directory cannot be read.
+     */
+    static @Nullable Listing readListing(@NotNull Path path) {
+        try {
+            Metrics.Counter.STAT_CALLS.increment();
+            return readListing(path, Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS));
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-        if (children == null) {
-            return;
+    private static @Nullable Listing readListing(@NotNull Path path, long modified) {
+        long start = System.nanoTime();
+        @NotNull List<FileMetadata> metas = new ArrayList<>();
+        @NotNull List<FileMetadata> hidden = new ArrayList<>(0);
+        try (@NotNull DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+            for (@NotNull Path child : children) {
+                try {
+                    @NotNull FileMetadata meta = FileMetadata.of(child);
+                    (meta.getName().startsWith(".") ? hidden : metas).add(meta);
+                } catch (IOException ignored) {
+                    // the entry vanished between the listing and the stat
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            return null;
+        } finally {
+            Metrics.Counter.DIRECTORIES_LISTED.increment();
+            Metrics.Counter.LISTING_NANOS.add(System.nanoTime() - start);
+        }
+        return new Listing(modified, metas, hidden);
+    }
+
+    /**
+     * Inserts {@code meta}, an entry the shell itself just created in {@code parentNode}, without
+     * listing the directory. A hidden entry is added to the hidden entries instead and
+     * {@code null} is returned. Follow up with {@link #markListed} on {@code parentNode} once all
+     * its new entries are in, or its next fetch lists it again anyway.
+     */
+    public @Nullable NaryTree.Node<FileMetadata> insertCreated(@NotNull NaryTree.Node<FileMetadata> parentNode, @NotNull FileMetadata meta) {
+        @NotNull String parentPath = parentNode.getValue().getAbsolutePath();
+        if (meta.getName().startsWith(".")) {
+            hidden.merge(parentPath, List.of(meta), (entries, added) -> {
+                @NotNull List<FileMetadata> merged = new ArrayList<>(entries);
+                merged.addAll(added);
+                return merged;
+            });
+            return null;
         }
 
-        for (@NotNull File child : children) {
-            if (child.getName().startsWith(".")) {
-                continue;
+        @NotNull NaryTree.Node<FileMetadata> node;
+        synchronized (parentNode) {
+            synchronized (Objects.requireNonNull(tree)) {
+                @NotNull List<NaryTree.Node<FileMetadata>> children = parentNode.getChildren();
+                for (@NotNull NaryTree.Node<FileMetadata> child : children) {
+                    if (child.getValue().getName().equals(meta.getName())) {
+                        unindex(child);
+                        children.remove(child);
+                        break;
+                    }
+                }
+
+                tree.insert(parentNode, meta);
+                node = children.get(children.size() - 1);
+                Metrics.Counter.NODES_CREATED.increment();
+                index.put(meta.getAbsolutePath(), node);
+                for (@NotNull Listener listener : listeners) {
+                    listener.onInserted(node);
+                }
+            }
+        }
+        invalidateTotals(parentNode);
+        return node;
+    }
+
+    /**
+     * Records that the children of {@code directory} are complete as of its modification time
+     * {@code modified}, as if it had just been listed. Used after the shell inserted what it
+     * created itself, see {@link #insertCreated}.
+     */
+    public void markListed(@NotNull NaryTree.Node<FileMetadata> directory, long modified) {
+        @NotNull String absolutePath = directory.getValue().getAbsolutePath();
+        hidden.putIfAbsent(absolutePath, List.of());
+        if (listings.put(absolutePath, modified) == null) {
+            for (@NotNull Listener listener : listeners) {
+                listener.onListed(directory);
             }
+        }
+    }
 
-            @NotNull FileMetadata meta = new FileMetadata(child);
+    /**
+     * Forgets when {@code node} was listed, so the next {@link #fetchChildren} lists it again even
+     * if its modification time looks the same.
+     */
+    public void invalidate(@NotNull NaryTree.Node<FileMetadata> node) {
+        listings.remove(node.getValue().getAbsolutePath());
+        @Nullable Prefetcher prefetching = prefetcher;
+        if (prefetching != null) {
+            prefetching.discard(node.getValue().getAbsolutePath());
+        }
+    }
+
+    /**
+     * Re-lists {@code node} right away. Used after the shell itself changed the directory.
+     */
+    public void refresh(@NotNull NaryTree.Node<FileMetadata> node) {
+        invalidate(node);
+        fetchChildren(node);
+    }
+
+    /**
+     * Drops every child of {@code node} from the tree and from the path index, so the next
+     * {@link #fetchChildren} lists the directory again.
+     */
+    public void clear(@NotNull NaryTree.Node<FileMetadata> node) {
+        synchronized (node) {
+            for (@NotNull NaryTree.Node<FileMetadata> child : node.getChildren()) {
+                unindex(child);
+            }
+            node.clear();
+            hidden.remove(node.getValue().getAbsolutePath());
+            invalidate(node);
+        }
+        invalidateTotals(node);
+    }
+
+    /**
+     * Drops the rolled-up size cached on {@code node} and on every ancestor, since all of them
+     * include the part of the tree that changed.
+     */
+    private void invalidateTotals(@NotNull NaryTree.Node<FileMetadata> node) {
+        for (@Nullable NaryTree.Node<FileMetadata> current = node; current != null; current = getParent(current)) {
+            current.getValue().setSummary(null);
+        }
+    }
+
+    private boolean merge(@NotNull NaryTree.Node<FileMetadata> parentNode, @NotNull List<FileMetadata> metas) {
+        boolean changed = false;
+        @NotNull List<NaryTree.Node<FileMetadata>> children = parentNode.getChildren();
+        @NotNull Map<String, NaryTree.Node<FileMetadata>> existing = new HashMap<>(children.size() * 2);
+        for (@NotNull NaryTree.Node<FileMetadata> child : children) {
+            existing.put(child.getValue().getName(), child);
+        }
+
+        for (@NotNull FileMetadata meta : metas) {
+            @Nullable NaryTree.Node<FileMetadata> old = existing.remove(meta.getName());
+            if (old != null) {
+                if (isSameEntry(old.getValue(), meta)) {
+                    // a kept directory may still have a new modification time
+                    if (old.getValue().update(meta.getSize(), meta.getModifiedNanos())) {
+                        for (@NotNull Listener listener : listeners) {
+                            listener.onUpdated(old);
+                        }
+                    }
+                    continue;
+                }
+                unindex(old);
+                children.remove(old);
+            }
+
+            changed = true;
             tree.insert(parentNode, meta);
+            @NotNull NaryTree.Node<FileMetadata> node = children.get(children.size() - 1);
+            Metrics.Counter.NODES_CREATED.increment();
+            index.put(meta.getAbsolutePath(), node);
+            for (@NotNull Listener listener : listeners) {
+                listener.onInserted(node);
+            }
+        }
+
+        for (@NotNull NaryTree.Node<FileMetadata> gone : existing.values()) {
+            unindex(gone);
+            children.remove(gone);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Whether a freshly listed entry can keep the node of the previous listing. A directory that is
+     * still the same directory keeps its node (and subtree) even if its contents changed, since
+     * those are revalidated when the directory itself is fetched; its attributes are updated.
+     */
+    private static boolean isSameEntry(@NotNull FileMetadata old, @NotNull FileMetadata fresh) {
+        if (old.isDirectory() != fresh.isDirectory() || old.isSymbolicLink() != fresh.isSymbolicLink()) {
+            return false;
+        }
+        if (old.getFileKey() != null && !Objects.equals(old.getFileKey(), fresh.getFileKey())) {
+            return false;
+        }
+        return old.isDirectory()
+                || (old.getSize() == fresh.getSize() && old.getModifiedNanos() == fresh.getModifiedNanos());
+    }
+
+    private void unindex(@NotNull NaryTree.Node<FileMetadata> node) {
+        index.remove(node.getValue().getAbsolutePath());
+        hidden.remove(node.getValue().getAbsolutePath());
+        for (@NotNull Listener listener : listeners) {
+            listener.onRemoved(node);
+        }
+        if (listings.remove(node.getValue().getAbsolutePath()) != null) {
+            for (@NotNull Listener listener : listeners) {
+                listener.onForgotten(node);
+            }
+        }
+        for (@NotNull NaryTree.Node<FileMetadata> child : node.getChildren()) {
+            unindex(child);
+        }
+    }
+
+    // Classes
+
+    /**
+     * The entries of a directory together with the modification time it had before it was read.
+     * Hidden entries are kept apart, as they do not become nodes.
+     */
+    static final class Listing {
+        private final long modified;
+        private final @NotNull List<FileMetadata> entries;
+        private final @NotNull List<FileMetadata> hidden;
+
+        private Listing(long modified, @NotNull List<FileMetadata> entries, @NotNull List<FileMetadata> hidden) {
+            this.modified = modified;
+            this.entries = entries;
+            this.hidden = hidden;
+        }
+
+        long getModified() {
+            return modified;
+        }
+
+        @NotNull List<FileMetadata> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * Observes changes to the loaded tree: nodes being inserted, removed and updated, and directories
+     * entering and leaving the set of listed directories.
+     */
+    public interface Listener {
+        default void onInserted(@NotNull NaryTree.Node<FileMetadata> node) {
+        }
+
+        default void onRemoved(@NotNull NaryTree.Node<FileMetadata> node) {
+        }
+
+        /**
+         * A node was kept across listings but its size or modification time changed.
+         */
+        default void onUpdated(@NotNull NaryTree.Node<FileMetadata> node) {
+        }
+
+        default void onListed(@NotNull NaryTree.Node<FileMetadata> directory) {
+        }
+
+        default void onForgotten(@NotNull NaryTree.Node<FileMetadata> directory) {
         }
     }
 }
@@ -0,0 +1,268 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Applies one file system operation to every path a glob pattern matches, as {@code rm *.tmp} or
+ * {@code mv logs/*.gz archive/} do. The sources are resolved once against the loaded tree, the
+ * operations run on a bounded pool, and every directory they touched is listed again once at the
+ * end, instead of once per file.
+ */
+public final class BulkExecutor {
+
+    // Helpers
+
+    /**
+     * Whether {@code path} holds a {@code *}, {@code ?} or {@code [} that is not escaped by a
+     * backslash.
+     */
+    public static boolean isPattern(@NotNull String path) {
+        return indexOfUnescaped(path, '*') >= 0 || indexOfUnescaped(path, '?') >= 0 || indexOfUnescaped(path, '[') >= 0;
+    }
+
+    public static int indexOfUnescaped(@NotNull String pattern, char c) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char at = pattern.charAt(i);
+            if (at == '\\') {
+                i++;
+            } else if (at == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Escapes every glob metacharacter in {@code name}, so it matches only itself.
+     */
+    public static @NotNull String escape(@NotNull String name) {
+        @NotNull StringBuilder escaped = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ("*?[]\\".indexOf(c) >= 0) escaped.append('\\');
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    public static @NotNull String unescape(@NotNull String pattern) {
+        if (pattern.indexOf('\\') < 0) return pattern;
+        @NotNull StringBuilder name = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) c = pattern.charAt(++i);
+            name.append(c);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Drops every source that lies below another source, since operating on the outer one covers
+     * it already, and sorts the rest by path. A path sorts after all of its ancestors, though not
+     * always right after them ({@code build-old} comes between {@code build} and
+     * {@code build/tmp}), so each one is checked against every kept ancestor.
+     */
+    public static @NotNull List<NaryTree.Node<FileMetadata>> outermost(@NotNull Collection<NaryTree.Node<FileMetadata>> sources) {
+        @NotNull List<NaryTree.Node<FileMetadata>> sorted = new ArrayList<>(sources);
+        sorted.sort(Comparator.comparing(node -> node.getValue().getAbsolutePath()));
+
+        @NotNull List<NaryTree.Node<FileMetadata>> kept = new ArrayList<>(sorted.size());
+        @NotNull Set<Path> keptPaths = new HashSet<>();
+        for (@NotNull NaryTree.Node<FileMetadata> node : sorted) {
+            @NotNull Path path = Path.of(node.getValue().getAbsolutePath());
+            if (isBelowAny(path, keptPaths)) continue;
+            kept.add(node);
+            keptPaths.add(path);
+        }
+        return kept;
+    }
+
+    private static boolean isBelowAny(@NotNull Path path, @NotNull Set<Path> ancestors) {
+        for (@Nullable Path current = path; current != null; current = current.getParent()) {
+            if (ancestors.contains(current)) return true;
+        }
+        return false;
+    }
+
+    // Objects
+
+    private final @NotNull BuildTree build;
+    private final int threads;
+
+    public BulkExecutor(@NotNull BuildTree build, int threads) {
+        this.build = build;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the nodes {@code pattern} matches, relative to {@code base} unless it is absolute.
+     * Any segment may be a glob ({@code *}, {@code ?}, {@code [...]}), and a backslash makes the
+     * next character literal; hidden entries are not in the tree and so never match.
+     *
+     * @throws PatternSyntaxException if a segment is not a valid glob
+     */
+    public @NotNull List<NaryTree.Node<FileMetadata>> resolve(@NotNull NaryTree.Node<FileMetadata> base, @NotNull String pattern) {
+        @NotNull String relative = pattern;
+        @NotNull List<NaryTree.Node<FileMetadata>> current = new ArrayList<>(List.of(base));
+        if (pattern.startsWith("/")) {
+            @Nullable NaryTree.Node<FileMetadata> root = build.getRoot();
+            if (root == null) return List.of();
+            @NotNull String rootPath = escape(root.getValue().getAbsolutePath());
+            if (!pattern.startsWith(rootPath + "/")) return List.of();
+            relative = pattern.substring(rootPath.length() + 1);
+            current = new ArrayList<>(List.of(root));
+        }
+
+        @NotNull String[] segments = relative.split("/");
+        for (int i = 0; i < segments.length && !current.isEmpty(); i++) {
+            @NotNull String segment = segments[i];
+            if (segment.isEmpty() || segment.equals(".")) continue;
+
+            boolean last = i == segments.length - 1;
+            @Nullable FileSearch.NameMatcher matcher = isPattern(segment) ? FileSearch.glob(segment) : null;
+            @NotNull String name = unescape(segment);
+            @NotNull List<NaryTree.Node<FileMetadata>> next = new ArrayList<>();
+            for (@NotNull NaryTree.Node<FileMetadata> node : current) {
+                if (segment.equals("..")) {
+                    @Nullable NaryTree.Node<FileMetadata> parent = build.getParent(node);
+                    next.add(parent != null ? parent : node);
+                    continue;
+                }
+                if (!node.getValue().isDirectory()) continue;
+
+                build.fetchChildren(node);
+                synchronized (node) {
+                    for (@NotNull NaryTree.Node<FileMetadata> child : node.getChildren()) {
+                        @NotNull FileMetadata meta = child.getValue();
+                        boolean matches = matcher != null ? matcher.matches(meta.getName()) : meta.getName().equals(name);
+                        if (matches && (last || meta.isDirectory())) {
+                            next.add(child);
+                        }
+                    }
+                }
+            }
+            current = next;
+        }
+        return outermost(current);
+    }
+
+    /**
+     * Runs {@code action} on the path of every source concurrently, at most {@code threads} at a
+     * time, and then lists the parent of every source, as well as each of {@code touched}, once.
+     * Failures do not stop the others; they are collected in the returned {@link Report}.
+     */
+    public @NotNull Report run(@NotNull List<NaryTree.Node<FileMetadata>> sources, @NotNull Action action, @NotNull Collection<NaryTree.Node<FileMetadata>> touched) {
+        @NotNull Report report = new Report();
+        long start = System.nanoTime();
+
+        @NotNull ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sources.size())));
+        try {
+            @NotNull List<Future<?>> futures = new ArrayList<>(sources.size());
+            for (@NotNull NaryTree.Node<FileMetadata> source : sources) {
+                @NotNull Path path = Path.of(source.getValue().getAbsolutePath());
+                futures.add(pool.submit(() -> {
+                    try {
+                        action.apply(path);
+                        report.done.increment();
+                    } catch (IOException e) {
+                        report.failed.add(path + ": " + describe(e));
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    report.failed.add(sources.get(i).getValue().getAbsolutePath() + ": " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+
+        refreshParents(sources, touched);
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Lists the parent of every source and each of {@code touched} again, each directory once.
+     */
+    public void refreshParents(@NotNull Collection<NaryTree.Node<FileMetadata>> sources, @NotNull Collection<NaryTree.Node<FileMetadata>> touched) {
+        @NotNull Map<NaryTree.Node<FileMetadata>, Boolean> directories = new IdentityHashMap<>();
+        for (@NotNull NaryTree.Node<FileMetadata> source : sources) {
+            @Nullable NaryTree.Node<FileMetadata> parent = build.getParent(source);
+            if (parent != null) directories.put(parent, true);
+        }
+        for (@NotNull NaryTree.Node<FileMetadata> directory : touched) {
+            directories.put(directory, true);
+        }
+        for (@NotNull NaryTree.Node<FileMetadata> directory : directories.keySet()) {
+            build.refresh(directory);
+        }
+    }
+
+    private static @NotNull String describe(@NotNull IOException e) {
+        if (e instanceof FileAlreadyExistsException) {
+            return "destination already exists";
+        }
+        if (e instanceof FileSystemException fileSystemException) {
+            return fileSystemException.getReason() != null ? fileSystemException.getReason() : e.getClass().getSimpleName();
+        }
+        return e.getLocalizedMessage() != null ? e.getLocalizedMessage() : e.getClass().getSimpleName();
+    }
+
+    // Classes
+
+    @FunctionalInterface
+    public interface Action {
+        void apply(@NotNull Path source) throws IOException;
+    }
+
+    public static final class Report {
+        private final @NotNull LongAdder done = new LongAdder();
+        private final @NotNull Queue<String> failed = new ConcurrentLinkedQueue<>();
+        private long elapsedNanos;
+
+        public long getDone() {
+            return done.sum();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public @NotNull List<String> getFailed() {
+            return new ArrayList<>(failed);
+        }
+
+        public boolean isComplete() {
+            return failed.isEmpty();
+        }
+    }
+}
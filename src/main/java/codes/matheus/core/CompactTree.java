@@ -0,0 +1,391 @@
+package codes.matheus.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read-only snapshot of a directory tree stored as parallel primitive arrays instead of one
+ * {@link FileMetadata} and tree node per entry. A node is an {@code int} id: its parent, first
+ * child and next sibling are ids, its size and modification time sit in {@code long} arrays, and
+ * its name is a reference into a shared byte arena where every distinct name is stored once.
+ * Absolute paths are not stored at all; they are rebuilt from the parent chain on demand.
+ * <p>
+ * That is about 33 bytes per entry plus the distinct names, against several hundred for the
+ * object tree, which is what makes trees of millions of files fit comfortably in the heap.
+ * Entries are read through an {@link Entry} flyweight, which can be repositioned on any id and
+ * turned into a regular {@link FileMetadata} when an API needs one.
+ * <p>
+ * Children are appended right after their directory is listed, so every node's id is greater
+ * than its parent's and the children of a directory have consecutive ids.
+ */
+public final class CompactTree {
+    public static final int NONE = -1;
+
+    private static final byte DIRECTORY = 1;
+    private static final byte SYMLINK = 2;
+
+    private final @NotNull String rootParent;
+
+    private int count;
+    private int[] parent = new int[1024];
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private int[] name = new int[1024];
+    private long[] size = new long[1024];
+    private long[] modified = new long[1024];
+    private byte[] flags = new byte[1024];
+
+    // names: a 2-byte length followed by the UTF-8 bytes, deduplicated through an open-addressing table
+    private byte[] arena = new byte[1 << 16];
+    private int arenaSize;
+    private int[] names = new int[1 << 12];
+    private int distinctNames;
+
+    private CompactTree(@NotNull Path root) {
+        @Nullable Path parentPath = root.getParent();
+        this.rootParent = parentPath != null ? parentPath.toString() : "";
+    }
+
+    /**
+     * Lists {@code root} and everything below it, one task per directory. Hidden entries are
+     * skipped and symbolic links to directories are not followed, as in {@link BuildTree}.
+     */
+    public static @NotNull CompactTree scan(@NotNull Path root, int threads) throws IOException {
+        @NotNull Path absolute = root.toAbsolutePath().normalize();
+        @NotNull BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+        @NotNull CompactTree tree = new CompactTree(absolute);
+        @Nullable Path fileName = absolute.getFileName();
+        int id = tree.append(NONE, fileName != null ? fileName.toString() : "", attributes, false);
+
+        if (attributes.isDirectory()) {
+            @NotNull ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new ScanTask(tree, id, absolute));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return tree;
+    }
+
+    // Getters
+
+    public int size() {
+        return count;
+    }
+
+    public int getDistinctNames() {
+        return distinctNames;
+    }
+
+    public int getRoot() {
+        return 0;
+    }
+
+    public int getParent(int id) {
+        return parent[id];
+    }
+
+    public int getFirstChild(int id) {
+        return firstChild[id];
+    }
+
+    public int getNextSibling(int id) {
+        return nextSibling[id];
+    }
+
+    public long getSize(int id) {
+        return size[id];
+    }
+
+    public long getModifiedNanos(int id) {
+        return modified[id];
+    }
+
+    public boolean isDirectory(int id) {
+        return (flags[id] & DIRECTORY) != 0;
+    }
+
+    public boolean isSymbolicLink(int id) {
+        return (flags[id] & SYMLINK) != 0;
+    }
+
+    public @NotNull String getName(int id) {
+        int offset = name[id];
+        return new String(arena, offset + 2, nameLength(offset), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The extension of a file's name in lower case, or {@code null} if it has none. Read straight
+     * from the arena, without decoding the whole name.
+     */
+    public @Nullable String getExtension(int id) {
+        int offset = name[id] + 2;
+        int length = nameLength(name[id]);
+        for (int i = length - 1; i >= 0; i--) {
+            if (arena[offset + i] == '.') {
+                return new String(arena, offset + i + 1, length - i - 1, StandardCharsets.UTF_8).toLowerCase();
+            }
+        }
+        return null;
+    }
+
+    public @NotNull String getAbsolutePath(int id) {
+        @NotNull List<String> parts = new ArrayList<>();
+        for (int current = id; current != NONE; current = parent[current]) {
+            parts.add(getName(current));
+        }
+
+        @NotNull StringBuilder path = new StringBuilder(rootParent);
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            if (path.length() == 0 || path.charAt(path.length() - 1) != '/') path.append('/');
+            path.append(parts.get(i));
+        }
+        return path.toString();
+    }
+
+    /**
+     * Approximate heap used by the arrays and the name arena.
+     */
+    public long getEstimatedBytes() {
+        return (long) parent.length * (4 * 4 + 8 * 2 + 1) + arena.length + names.length * 4L;
+    }
+
+    public @NotNull Entry entry(int id) {
+        return new Entry(id);
+    }
+
+    // Building
+
+    private synchronized int appendChildren(int parentId, @NotNull List<String> childNames, @NotNull List<BasicFileAttributes> attributes,
+                                            @NotNull List<Boolean> links) {
+        int first = NONE;
+        int previous = NONE;
+        for (int i = 0; i < childNames.size(); i++) {
+            int id = append(parentId, childNames.get(i), attributes.get(i), links.get(i));
+            if (previous == NONE) {
+                first = id;
+            } else {
+                nextSibling[previous] = id;
+            }
+            previous = id;
+        }
+        firstChild[parentId] = first;
+        return first;
+    }
+
+    private int append(int parentId, @NotNull String entryName, @NotNull BasicFileAttributes attributes, boolean link) {
+        if (count == parent.length) grow();
+
+        int id = count++;
+        parent[id] = parentId;
+        firstChild[id] = NONE;
+        nextSibling[id] = NONE;
+        name[id] = intern(entryName);
+        size[id] = attributes.size();
+        modified[id] = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        flags[id] = (byte) ((attributes.isDirectory() ? DIRECTORY : 0) | (link ? SYMLINK : 0));
+        return id;
+    }
+
+    private void grow() {
+        int capacity = parent.length + (parent.length >> 1);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        name = Arrays.copyOf(name, capacity);
+        size = Arrays.copyOf(size, capacity);
+        modified = Arrays.copyOf(modified, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private int intern(@NotNull String entryName) {
+        @NotNull byte[] bytes = entryName.getBytes(StandardCharsets.UTF_8);
+        int hash = Arrays.hashCode(bytes);
+        int mask = names.length - 1;
+
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int stored = names[slot];
+            if (stored == 0) {
+                int offset = store(bytes);
+                names[slot] = offset + 1;
+                if (++distinctNames * 2 > names.length) rehash();
+                return offset;
+            }
+            if (matches(stored - 1, bytes)) {
+                return stored - 1;
+            }
+        }
+    }
+
+    private int store(@NotNull byte[] bytes) {
+        int needed = arenaSize + 2 + bytes.length;
+        if (needed > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(needed, arena.length + (arena.length >> 1)));
+        }
+        int offset = arenaSize;
+        arena[offset] = (byte) (bytes.length >>> 8);
+        arena[offset + 1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, arena, offset + 2, bytes.length);
+        arenaSize = needed;
+        return offset;
+    }
+
+    private boolean matches(int offset, @NotNull byte[] bytes) {
+        return nameLength(offset) == bytes.length
+                && Arrays.equals(arena, offset + 2, offset + 2 + bytes.length, bytes, 0, bytes.length);
+    }
+
+    private void rehash() {
+        @NotNull int[] old = names;
+        names = new int[old.length * 2];
+        int mask = names.length - 1;
+        for (int stored : old) {
+            if (stored == 0) continue;
+            int offset = stored - 1;
+            int hash = Arrays.hashCode(Arrays.copyOfRange(arena, offset + 2, offset + 2 + nameLength(offset)));
+            int slot = mix(hash) & mask;
+            while (names[slot] != 0) slot = (slot + 1) & mask;
+            names[slot] = stored;
+        }
+    }
+
+    private int nameLength(int offset) {
+        return (arena[offset] & 0xFF) << 8 | (arena[offset + 1] & 0xFF);
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // Classes
+
+    /**
+     * A movable view of one node. One instance can walk the whole tree without allocating.
+     */
+    public final class Entry {
+        private int id;
+
+        private Entry(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public @NotNull Entry moveTo(int id) {
+            this.id = id;
+            return this;
+        }
+
+        public @NotNull String getName() {
+            return CompactTree.this.getName(id);
+        }
+
+        public @NotNull String getAbsolutePath() {
+            return CompactTree.this.getAbsolutePath(id);
+        }
+
+        public long getSize() {
+            return size[id];
+        }
+
+        public long getModifiedNanos() {
+            return modified[id];
+        }
+
+        public boolean isDirectory() {
+            return CompactTree.this.isDirectory(id);
+        }
+
+        public boolean isSymbolicLink() {
+            return CompactTree.this.isSymbolicLink(id);
+        }
+
+        /**
+         * Materializes the entry as a regular {@link FileMetadata}, for code that works on the
+         * object tree.
+         */
+        public @NotNull FileMetadata toMetadata() {
+            return new FileMetadata(getName(), getAbsolutePath(), isDirectory(), isSymbolicLink(), getSize(), getModifiedNanos());
+        }
+
+        @Override
+        public String toString() {
+            return (isDirectory() ? "[DIR] " : "[FILE] ") + getName();
+        }
+    }
+
+    private static final class ScanTask extends RecursiveAction {
+        private final @NotNull CompactTree tree;
+        private final int id;
+        private final @NotNull Path directory;
+
+        private ScanTask(@NotNull CompactTree tree, int id, @NotNull Path directory) {
+            this.tree = tree;
+            this.id = id;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            @NotNull List<String> childNames = new ArrayList<>();
+            @NotNull List<BasicFileAttributes> attributes = new ArrayList<>();
+            @NotNull List<Boolean> links = new ArrayList<>();
+
+            try (@NotNull DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+                for (@NotNull Path child : children) {
+                    @NotNull String childName = child.getFileName().toString();
+                    if (childName.startsWith(".")) continue;
+
+                    try {
+                        @NotNull BasicFileAttributes own = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        boolean link = own.isSymbolicLink();
+                        childNames.add(childName);
+                        attributes.add(link ? readFollowing(child, own) : own);
+                        links.add(link);
+                    } catch (IOException ignored) {
+                        // the entry vanished between the listing and the stat
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                return;
+            }
+            if (childNames.isEmpty()) return;
+
+            int first = tree.appendChildren(id, childNames, attributes, links);
+            @NotNull List<ScanTask> subtasks = new ArrayList<>();
+            for (int i = 0; i < childNames.size(); i++) {
+                if (attributes.get(i).isDirectory() && !links.get(i)) {
+                    subtasks.add(new ScanTask(tree, first + i, directory.resolve(childNames.get(i))));
+                }
+            }
+            invokeAll(subtasks);
+        }
+
+        private static @NotNull BasicFileAttributes readFollowing(@NotNull Path link, @NotNull BasicFileAttributes own) {
+            try {
+                return Files.readAttributes(link, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // dangling link: describe the link itself
+                return own;
+            }
+        }
+    }
+}
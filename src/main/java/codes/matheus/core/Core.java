@@ -1,18 +1,22 @@
 package codes.matheus.core;
 
+import codes.matheus.cli.BatchRunner;
 import codes.matheus.cli.CommandHandler;
 import codes.matheus.datastructures.tree.NaryTree;
 import codes.matheus.util.Colors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Scanner;
 
 public final class Core {
     private final @NotNull CommandHandler handler;
     private final @NotNull BuildTree build;
     private @Nullable NaryTree.Node<FileMetadata> current;
+    private @Nullable TreeWatcher watcher;
     private boolean running;
 
     public Core() {
@@ -21,6 +25,14 @@ public final class Core {
         this.running = false;
     }
 
+    public @NotNull CommandHandler getHandler() {
+        return handler;
+    }
+
+    public @NotNull BuildTree getBuild() {
+        return build;
+    }
+
     public @Nullable NaryTree.Node<FileMetadata> getCurrent() {
         return current;
     }
@@ -33,27 +45,103 @@ public final class Core {
         this.running = running;
     }
 
-    public void run() {
-        @NotNull String path = System.getProperty("user.home");
-        System.out.println(Colors.format("Initializing system at: " + path, Colors.GREEN));
+    public @Nullable TreeWatcher getWatcher() {
+        return watcher;
+    }
+
+    public void startWatching() throws IOException {
+        if (watcher != null) return;
+        @NotNull TreeWatcher started = new TreeWatcher(build);
+        started.start();
+        this.watcher = started;
+    }
+
+    public void stopWatching() throws IOException {
+        if (watcher == null) return;
+        watcher.close();
+        this.watcher = null;
+    }
 
+    /**
+     * Loads the tree rooted at {@code path} and makes its root the current directory, without
+     * starting the prompt.
+     */
+    public void load(@NotNull String path) {
         build.load(path);
-        System.out.println(Colors.format("Success loading tree...", Colors.GREEN));
+        this.current = build.getRoot();
+    }
 
-        if (build.getTree() != null) {
-            @NotNull FileMetadata rootTarget = new FileMetadata(new File(path));
-            this.current = build.getTree().search(rootTarget);
-        }
+    /**
+     * Reads and runs commands from standard input, one at a time, until {@code exit} or the end of
+     * the input. {@code prompt} is off when the input is piped rather than typed.
+     */
+    public void run(boolean prompt) {
+        @NotNull TreeSnapshot snapshot = open(prompt);
 
         final @NotNull Scanner scanner = new Scanner(System.in);
         running = true;
 
         while (running) {
-            @NotNull String prompt = (current != null) ? current.getValue().getName() : "shell";
-            System.out.print(prompt + " > ");
+            if (prompt) {
+                System.out.print(((current != null) ? current.getValue().getName() : "shell") + " > ");
+            }
+            if (!scanner.hasNextLine()) break;
             @NotNull String input = scanner.nextLine();
+            if (watcher != null) {
+                watcher.applyPending();
+            }
             handler.execute(input);
         }
         scanner.close();
+        close(snapshot);
+    }
+
+    /**
+     * Runs {@code lines} as a script: no prompt, no colors, and consecutive read-only commands
+     * run concurrently. See {@link BatchRunner}.
+     *
+     * @return {@code false} if the script did not parse or one of its commands failed
+     */
+    public boolean runBatch(@NotNull List<String> lines) {
+        Colors.setEnabled(false);
+        @NotNull TreeSnapshot snapshot = open(false);
+        running = true;
+
+        boolean succeeded = new BatchRunner(this, Runtime.getRuntime().availableProcessors()).run(lines);
+        close(snapshot);
+        return succeeded;
+    }
+
+    private @NotNull TreeSnapshot open(boolean verbose) {
+        @NotNull String path = System.getProperty("user.home");
+        if (verbose) {
+            System.out.println(Colors.format("Initializing system at: " + path, Colors.GREEN));
+        }
+
+        @NotNull TreeSnapshot snapshot = new TreeSnapshot(Path.of(path, ".jfs", "tree.snapshot"));
+        if (snapshot.restore(build, path)) {
+            this.current = build.getRoot();
+            if (verbose) System.out.println(Colors.format("Restored tree from snapshot...", Colors.GREEN));
+        } else {
+            load(path);
+            if (verbose) System.out.println(Colors.format("Success loading tree...", Colors.GREEN));
+        }
+        return snapshot;
+    }
+
+    private void close(@NotNull TreeSnapshot snapshot) {
+        build.disablePrefetch();
+
+        try {
+            stopWatching();
+        } catch (IOException e) {
+            System.out.println(Colors.format("Error stopping the watcher: " + e.getLocalizedMessage(), Colors.RED));
+        }
+
+        try {
+            snapshot.save(build);
+        } catch (IOException e) {
+            System.out.println(Colors.format("Error saving the tree snapshot: " + e.getLocalizedMessage(), Colors.RED));
+        }
     }
 }
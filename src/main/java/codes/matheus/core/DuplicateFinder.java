@@ -0,0 +1,378 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import codes.matheus.util.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Finds files with identical contents below a node. Candidates are narrowed in stages so that
+ * only files that still might be duplicates are read: first by size, then by a hash of their
+ * first and last 4 KB, and only then by a SHA-256 of the whole content, read through
+ * memory-mapped windows. Each stage hashes its files in parallel.
+ * <p>
+ * Every candidate is stat'ed once while collecting, since the tree only notices changes to a
+ * directory's entries and not a file edited in place. Hashes are kept between runs, keyed by path
+ * and validated against that size and modification time, so running the search again only reads
+ * files that changed.
+ */
+public final class DuplicateFinder {
+    private static final int EDGE = 4096;
+    private static final long WINDOW = 1L << 24;
+
+    private static final @NotNull ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final @NotNull Map<String, CachedHash> cache = new ConcurrentHashMap<>();
+
+    public DuplicateFinder() {
+    }
+
+    public @NotNull Result find(@NotNull BuildTree build, @NotNull NaryTree.Node<FileMetadata> root, int threads) {
+        @NotNull Result result = new Result();
+        long start = System.nanoTime();
+
+        @NotNull ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            @NotNull List<FileMetadata> files = withoutHardLinks(pool.invoke(new CollectTask(build, root)));
+            result.scanned = files.size();
+
+            @NotNull List<List<FileMetadata>> bySize = groups(files, FileMetadata::getSize);
+            result.sizeCandidates = count(bySize);
+
+            @NotNull List<List<FileMetadata>> byEdges = refine(pool, bySize, meta -> edgeHash(meta, result));
+            result.edgeCandidates = count(byEdges);
+
+            @NotNull List<List<FileMetadata>> byContent = refine(pool, byEdges, meta -> fullHash(meta, result));
+            for (@NotNull List<FileMetadata> group : byContent) {
+                @NotNull List<String> paths = group.stream().map(FileMetadata::getAbsolutePath).sorted().collect(Collectors.toList());
+                result.groups.add(new Group(group.get(0).getSize(), paths));
+            }
+            result.groups.sort(Comparator.comparingLong(Group::getReclaimable).reversed());
+        } finally {
+            pool.shutdown();
+        }
+
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Keeps one path per file: further hard links to it would not free any space when removed.
+     */
+    private static @NotNull List<FileMetadata> withoutHardLinks(@NotNull List<FileMetadata> files) {
+        @NotNull Set<Object> keys = new HashSet<>();
+        @NotNull List<FileMetadata> unique = new ArrayList<>(files.size());
+        for (@NotNull FileMetadata meta : files) {
+            @Nullable Object key = meta.getFileKey();
+            if (key == null || keys.add(key)) unique.add(meta);
+        }
+        return unique;
+    }
+
+    /**
+     * Splits every group by {@code key}, computed in parallel, and keeps the parts that still
+     * hold more than one file. Files whose key cannot be computed drop out.
+     */
+    private static @NotNull List<List<FileMetadata>> refine(@NotNull ForkJoinPool pool, @NotNull List<List<FileMetadata>> groups,
+                                                           @NotNull Function<FileMetadata, String> key) {
+        @NotNull List<FileMetadata> candidates = groups.stream().flatMap(List::stream).collect(Collectors.toList());
+        @NotNull Map<FileMetadata, String> keys;
+        try {
+            keys = pool.submit(() -> candidates.parallelStream()
+                    .map(meta -> {
+                        @Nullable String hash = key.apply(meta);
+                        return hash != null ? Map.entry(meta, hash) : null;
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toConcurrentMap(Map.Entry::getKey, Map.Entry::getValue))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        @NotNull List<List<FileMetadata>> refined = new ArrayList<>();
+        for (@NotNull List<FileMetadata> group : groups) {
+            @NotNull List<FileMetadata> hashed = group.stream().filter(keys::containsKey).collect(Collectors.toList());
+            refined.addAll(groups(hashed, keys::get));
+        }
+        return refined;
+    }
+
+    private static <K> @NotNull List<List<FileMetadata>> groups(@NotNull List<FileMetadata> files, @NotNull Function<FileMetadata, K> key) {
+        @NotNull Map<K, List<FileMetadata>> groups = new HashMap<>();
+        for (@NotNull FileMetadata meta : files) {
+            groups.computeIfAbsent(key.apply(meta), k -> new ArrayList<>()).add(meta);
+        }
+        @NotNull List<List<FileMetadata>> duplicates = new ArrayList<>();
+        for (@NotNull List<FileMetadata> group : groups.values()) {
+            if (group.size() > 1) duplicates.add(group);
+        }
+        return duplicates;
+    }
+
+    private static long count(@NotNull List<List<FileMetadata>> groups) {
+        long count = 0;
+        for (@NotNull List<FileMetadata> group : groups) {
+            count += group.size();
+        }
+        return count;
+    }
+
+    // Hashing
+
+    private @Nullable String edgeHash(@NotNull FileMetadata meta, @NotNull Result result) {
+        @NotNull CachedHash cached = cached(meta);
+        if (cached.edges != null) {
+            result.cacheHits.increment();
+            return cached.edges;
+        }
+
+        try (@NotNull FileChannel channel = FileChannel.open(Path.of(meta.getAbsolutePath()), StandardOpenOption.READ)) {
+            long size = channel.size();
+            @NotNull MessageDigest digest = DIGESTS.get();
+            digest.reset();
+
+            // files that fit in both edges are read whole, which makes this their full hash too
+            boolean whole = size <= 2L * EDGE;
+            @NotNull ByteBuffer buffer = ByteBuffer.allocate(whole ? (int) size : EDGE);
+            read(channel, buffer, 0);
+            digest.update(buffer.flip());
+            if (!whole) {
+                read(channel, buffer.clear(), size - EDGE);
+                digest.update(buffer.flip());
+            }
+            result.bytesRead.add(whole ? size : 2L * EDGE);
+            Metrics.Counter.BYTES_READ.add(whole ? size : 2L * EDGE);
+
+            cached.edges = toHex(digest.digest());
+            if (whole) cached.full = cached.edges;
+            return cached.edges;
+        } catch (IOException e) {
+            result.unreadable.increment();
+            return null;
+        }
+    }
+
+    private @Nullable String fullHash(@NotNull FileMetadata meta, @NotNull Result result) {
+        @NotNull CachedHash cached = cached(meta);
+        if (cached.full != null) {
+            result.cacheHits.increment();
+            return cached.full;
+        }
+
+        try (@NotNull FileChannel channel = FileChannel.open(Path.of(meta.getAbsolutePath()), StandardOpenOption.READ)) {
+            long size = channel.size();
+            @NotNull MessageDigest digest = DIGESTS.get();
+            digest.reset();
+
+            for (long position = 0; position < size; position += WINDOW) {
+                @NotNull MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+                digest.update(window);
+            }
+            result.bytesRead.add(size);
+            Metrics.Counter.BYTES_READ.add(size);
+
+            cached.full = toHex(digest.digest());
+            return cached.full;
+        } catch (IOException e) {
+            result.unreadable.increment();
+            return null;
+        }
+    }
+
+    private @NotNull CachedHash cached(@NotNull FileMetadata meta) {
+        return cache.compute(meta.getAbsolutePath(), (path, hash) ->
+                hash != null && hash.size == meta.getSize() && hash.modifiedNanos == meta.getModifiedNanos()
+                        ? hash
+                        : new CachedHash(meta.getSize(), meta.getModifiedNanos()));
+    }
+
+    private static void read(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+    }
+
+    private static @NotNull String toHex(@NotNull byte[] hash) {
+        @NotNull StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    // Classes
+
+    public static final class Result {
+        private final @NotNull List<Group> groups = new ArrayList<>();
+        private final @NotNull LongAdder bytesRead = new LongAdder();
+        private final @NotNull LongAdder cacheHits = new LongAdder();
+        private final @NotNull LongAdder unreadable = new LongAdder();
+        private long scanned;
+        private long sizeCandidates;
+        private long edgeCandidates;
+        private long elapsedNanos;
+
+        public @NotNull List<Group> getGroups() {
+            return groups;
+        }
+
+        public long getReclaimable() {
+            long total = 0;
+            for (@NotNull Group group : groups) {
+                total += group.getReclaimable();
+            }
+            return total;
+        }
+
+        public long getScanned() {
+            return scanned;
+        }
+
+        public long getSizeCandidates() {
+            return sizeCandidates;
+        }
+
+        public long getEdgeCandidates() {
+            return edgeCandidates;
+        }
+
+        public long getBytesRead() {
+            return bytesRead.sum();
+        }
+
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        public long getUnreadable() {
+            return unreadable.sum();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+    }
+
+    public static final class Group {
+        private final long size;
+        private final @NotNull List<String> paths;
+
+        private Group(long size, @NotNull List<String> paths) {
+            this.size = size;
+            this.paths = paths;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public @NotNull List<String> getPaths() {
+            return paths;
+        }
+
+        /**
+         * The space freed by keeping a single copy.
+         */
+        public long getReclaimable() {
+            return size * (paths.size() - 1);
+        }
+    }
+
+    private static final class CachedHash {
+        private final long size;
+        private final long modifiedNanos;
+        private volatile @Nullable String edges;
+        private volatile @Nullable String full;
+
+        private CachedHash(long size, long modifiedNanos) {
+            this.size = size;
+            this.modifiedNanos = modifiedNanos;
+        }
+    }
+
+    /**
+     * Collects the regular, non-empty files below a directory, with their metadata as it is on
+     * disk now rather than as it was when the tree listed them.
+     */
+    private static final class CollectTask extends RecursiveTask<List<FileMetadata>> {
+        private final @NotNull BuildTree build;
+        private final @NotNull NaryTree.Node<FileMetadata> node;
+
+        private CollectTask(@NotNull BuildTree build, @NotNull NaryTree.Node<FileMetadata> node) {
+            this.build = build;
+            this.node = node;
+        }
+
+        @Override
+        protected @NotNull List<FileMetadata> compute() {
+            @NotNull List<FileMetadata> files = new ArrayList<>();
+            @NotNull List<CollectTask> subtasks = new ArrayList<>();
+
+            for (@NotNull NaryTree.Node<FileMetadata> child : build.listChildren(node)) {
+                @NotNull FileMetadata meta = child.getValue();
+                if (meta.isSymbolicLink()) continue;
+
+                if (meta.isDirectory()) {
+                    @NotNull CollectTask task = new CollectTask(build, child);
+                    task.fork();
+                    subtasks.add(task);
+                } else {
+                    @Nullable FileMetadata current = current(meta);
+                    if (current != null && current.getSize() > 0) files.add(current);
+                }
+            }
+
+            for (@NotNull CollectTask task : subtasks) {
+                files.addAll(task.join());
+            }
+            return files;
+        }
+
+        private static @Nullable FileMetadata current(@NotNull FileMetadata meta) {
+            @NotNull Path path = Path.of(meta.getAbsolutePath());
+            try {
+                Metrics.Counter.STAT_CALLS.increment();
+                @NotNull BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                return attributes.isRegularFile() ? new FileMetadata(path, attributes) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
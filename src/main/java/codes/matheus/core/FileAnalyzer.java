@@ -3,20 +3,37 @@ package codes.matheus.core;
 import codes.matheus.cli.Command;
 import codes.matheus.datastructures.tree.NaryTree;
 import codes.matheus.util.Colors;
+import codes.matheus.util.OutputSink;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public final class FileAnalyzer {
-    public static boolean validate(@Nullable NaryTree.Node<FileMetadata> node, @NotNull Command command) {
-        if (node == null) return false;
-        if (command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command don't needs flags", Colors.RED));
-            return false;
+    public static boolean validate(@Nullable NaryTree.Node<FileMetadata> node, @NotNull Command command, @NotNull String... allowedFlags) {
+        return node != null && validateFlags(command, allowedFlags);
+    }
+
+    /**
+     * Checks only the flags of {@code command}, for commands that work without a loaded tree.
+     */
+    public static boolean validateFlags(@NotNull Command command, @NotNull String... allowedFlags) {
+        @NotNull Set<String> allowed = Set.of(allowedFlags);
+        for (@NotNull String flag : command.getFlagKeys()) {
+            if (!allowed.contains(flag)) {
+                OutputSink.current().println("Unknown flag for " + command.getAction() + ": " + flag, Colors.RED);
+                return false;
+            }
         }
         return true;
     }
@@ -24,6 +41,60 @@ public final class FileAnalyzer {
     public FileAnalyzer() {
     }
 
+    /**
+     * Walks the whole subtree of {@code root} on a work-stealing pool, one task per directory.
+     * Each task counts its own directory into a private {@link Result} and merges the results of
+     * its subdirectory tasks on join, so no counter is shared between workers.
+     * <p>
+     * The {@link Summary} of every directory visited is cached on its {@link FileMetadata} until
+     * something below it changes. Every directory is still fetched, so changes made outside the
+     * shell are seen, but the files of a directory whose summary survived that are not counted
+     * again unless {@code top} is positive. When it is, the {@code top} largest files and
+     * directories are kept in bounded min-heaps that are merged on join as well, so memory stays
+     * proportional to {@code top}.
+     */
+    public @NotNull Result analyze(@NotNull BuildTree build, @NotNull NaryTree.Node<FileMetadata> root, int threads, int top) {
+        @NotNull ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new AnalysisTask(build, root, top));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Analyzes a {@link CompactTree} in one pass over its arrays. Ids are visited from the last to
+     * the first, and since every child's id is greater than its parent's, each directory's size is
+     * complete by the time the sweep reaches it. Paths are only built for entries that make it into
+     * the top-{@code top} heaps.
+     */
+    public @NotNull Result analyze(@NotNull CompactTree tree, int top) {
+        @NotNull Result result = new Result(top);
+        @NotNull long[] totals = new long[tree.size()];
+
+        for (int id = tree.size() - 1; id >= 0; id--) {
+            if (tree.isDirectory(id)) {
+                if (id == tree.getRoot()) break;
+                result.addDirectory();
+                if (!tree.isSymbolicLink(id) && result.largestDirectories.accepts(totals[id])) {
+                    result.largestDirectories.offer(totals[id], tree.getAbsolutePath(id));
+                }
+            } else {
+                long size = tree.getSize(id);
+                @Nullable String ext = tree.getExtension(id);
+                result.addFile(size, ext != null ? ext : "no-ext");
+                if (result.largestFiles.accepts(size)) {
+                    result.largestFiles.offer(size, tree.getAbsolutePath(id));
+                }
+                totals[id] = size;
+            }
+            if (id != tree.getRoot()) {
+                totals[tree.getParent(id)] += totals[id];
+            }
+        }
+        return result;
+    }
+
     public @NotNull String formatSize(long bytes) {
         if (bytes < 1024) return bytes + " B";
         int exp = (int) (Math.log(bytes) / Math.log(1024));
@@ -35,7 +106,14 @@ public final class FileAnalyzer {
         private final @NotNull AtomicLong totalSize = new AtomicLong(0);
         private final @NotNull AtomicInteger fileCount = new AtomicInteger(0);
         private final @NotNull AtomicInteger dirCount = new AtomicInteger(0);
-        private  final @NotNull Map<String, Integer> extensions = new HashMap<>();
+        private final @NotNull Map<String, Integer> extensions = new ConcurrentHashMap<>();
+        private final @NotNull TopN largestFiles;
+        private final @NotNull TopN largestDirectories;
+
+        private Result(int top) {
+            this.largestFiles = new TopN(top);
+            this.largestDirectories = new TopN(top);
+        }
 
         public long getTotalSize() {
             return totalSize.get();
@@ -53,16 +131,195 @@ public final class FileAnalyzer {
             return extensions;
         }
 
+        /**
+         * The largest files, biggest first.
+         */
+        public @NotNull List<Ranked> getLargestFiles() {
+            return largestFiles.sorted();
+        }
+
+        /**
+         * The largest directories by rolled-up size, biggest first. The analyzed root is not included.
+         */
+        public @NotNull List<Ranked> getLargestDirectories() {
+            return largestDirectories.sorted();
+        }
+
         public void addFile(long size, @Nullable String string) {
             fileCount.incrementAndGet();
             totalSize.addAndGet(size);
             if (string != null) {
-                extensions.put(string, extensions.getOrDefault(string, 0) + 1);
+                extensions.merge(string, 1, Integer::sum);
             }
         }
 
         public void addDirectory() {
             dirCount.incrementAndGet();
         }
+
+        private void merge(@NotNull Summary summary) {
+            totalSize.addAndGet(summary.totalSize);
+            fileCount.addAndGet(summary.fileCount);
+            dirCount.addAndGet(summary.dirCount);
+            for (int i = 0; i < summary.extensions.length; i++) {
+                extensions.merge(summary.extensions[i], summary.counts[i], Integer::sum);
+            }
+        }
+
+        public void merge(@NotNull Result other) {
+            totalSize.addAndGet(other.getTotalSize());
+            fileCount.addAndGet(other.getFileCount());
+            dirCount.addAndGet(other.getDirCount());
+            other.extensions.forEach((ext, count) -> extensions.merge(ext, count, Integer::sum));
+            largestFiles.merge(other.largestFiles);
+            largestDirectories.merge(other.largestDirectories);
+        }
+    }
+
+    /**
+     * The counts of a {@link Result} for one directory, without its largest entries.
+     */
+    static final class Summary {
+        private final long totalSize;
+        private final int fileCount;
+        private final int dirCount;
+        private final @NotNull String @NotNull [] extensions;
+        private final int @NotNull [] counts;
+
+        private Summary(@NotNull Result result) {
+            this.totalSize = result.getTotalSize();
+            this.fileCount = result.getFileCount();
+            this.dirCount = result.getDirCount();
+            this.extensions = new String[result.extensions.size()];
+            this.counts = new int[extensions.length];
+            int i = 0;
+            for (@NotNull Map.Entry<String, Integer> entry : result.extensions.entrySet()) {
+                extensions[i] = entry.getKey();
+                counts[i++] = entry.getValue();
+            }
+        }
+
+        long getTotalSize() {
+            return totalSize;
+        }
+    }
+
+    public static final class Ranked {
+        private final long size;
+        private final @NotNull String path;
+
+        private Ranked(long size, @NotNull String path) {
+            this.size = size;
+            this.path = path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public @NotNull String getPath() {
+            return path;
+        }
+    }
+
+    /**
+     * Keeps the {@code limit} largest entries offered to it in a min-heap, so the smallest kept
+     * entry is the one to evict.
+     */
+    private static final class TopN {
+        private final int limit;
+        private final @NotNull PriorityQueue<Ranked> heap;
+
+        private TopN(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(Math.max(1, limit), Comparator.comparingLong(Ranked::getSize));
+        }
+
+        private boolean accepts(long size) {
+            return heap.size() < limit || (limit > 0 && size > heap.peek().getSize());
+        }
+
+        private void offer(long size, @NotNull String path) {
+            if (heap.size() < limit) {
+                heap.add(new Ranked(size, path));
+            } else if (limit > 0 && size > heap.peek().getSize()) {
+                heap.poll();
+                heap.add(new Ranked(size, path));
+            }
+        }
+
+        private void merge(@NotNull TopN other) {
+            for (@NotNull Ranked ranked : other.heap) {
+                offer(ranked.getSize(), ranked.getPath());
+            }
+        }
+
+        private @NotNull List<Ranked> sorted() {
+            @NotNull List<Ranked> sorted = new ArrayList<>(heap);
+            sorted.sort(Comparator.comparingLong(Ranked::getSize).reversed());
+            return sorted;
+        }
+    }
+
+    private static final class AnalysisTask extends RecursiveTask<Result> {
+        private final @NotNull BuildTree build;
+        private final @NotNull NaryTree.Node<FileMetadata> node;
+        private final int top;
+
+        private AnalysisTask(@NotNull BuildTree build, @NotNull NaryTree.Node<FileMetadata> node, int top) {
+            this.build = build;
+            this.node = node;
+            this.top = top;
+        }
+
+        @Override
+        protected @NotNull Result compute() {
+            @NotNull List<NaryTree.Node<FileMetadata>> children = build.listChildren(node);
+            @NotNull List<AnalysisTask> subtasks = new ArrayList<>();
+            for (@NotNull NaryTree.Node<FileMetadata> child : children) {
+                @NotNull FileMetadata meta = child.getValue();
+                if (meta.isDirectory() && !meta.isSymbolicLink()) {
+                    @NotNull AnalysisTask task = new AnalysisTask(build, child, top);
+                    task.fork();
+                    subtasks.add(task);
+                }
+            }
+            @NotNull List<Result> subresults = new ArrayList<>(subtasks.size());
+            for (@NotNull AnalysisTask task : subtasks) {
+                subresults.add(task.join());
+            }
+
+            // every directory below has been fetched again by now, and a change in any of them
+            // dropped this summary; the largest entries are not cached, so with top it is not used
+            @NotNull Result result = new Result(top);
+            @Nullable Summary cached = top == 0 ? node.getValue().getSummary() : null;
+            if (cached != null) {
+                result.merge(cached);
+                return result;
+            }
+
+            for (@NotNull NaryTree.Node<FileMetadata> child : children) {
+                @NotNull FileMetadata meta = child.getValue();
+
+                if (meta.isDirectory()) {
+                    result.addDirectory();
+                } else {
+                    @NotNull String name = meta.getName();
+                    @NotNull String ext = name.contains(".")
+                            ? name.substring(name.lastIndexOf(".") + 1).toLowerCase()
+                            : "no-ext";
+                    result.addFile(meta.getSize(), ext);
+                    result.largestFiles.offer(meta.getSize(), meta.getAbsolutePath());
+                }
+            }
+
+            for (int i = 0; i < subtasks.size(); i++) {
+                @NotNull Result sub = subresults.get(i);
+                result.merge(sub);
+                result.largestDirectories.offer(sub.getTotalSize(), subtasks.get(i).node.getValue().getAbsolutePath());
+            }
+            node.getValue().setSummary(new Summary(result));
+            return result;
+        }
     }
 }
@@ -0,0 +1,273 @@
+package codes.matheus.core;
+
+import codes.matheus.util.Metrics;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encrypts and decrypts files with AES-256-GCM in independent chunks, so every core can work on
+ * a different part of the file at once.
+ * <p>
+ * The output starts with a header holding the format magic, the chunk size, the PBKDF2 iteration
+ * count, the salt and a random base nonce. Every chunk is sealed on its own: its nonce is the base
+ * nonce with the chunk index XORed into the last eight bytes, and its associated data is the
+ * header followed by the index and a last-chunk flag, so chunks cannot be reordered, dropped or
+ * moved between files, and truncation is detected. Workers read and write with positional
+ * {@link FileChannel} calls through their own direct buffers; a file is never held in the heap.
+ */
+public final class FileCipher {
+    private static final int MAGIC = 0x4A465343; // "JFSC"
+    private static final byte VERSION = 1;
+    private static final int CHUNK = 1 << 20;
+    private static final int TAG_BYTES = 16;
+    private static final int SALT_BYTES = 16;
+    private static final int NONCE_BYTES = 12;
+    private static final int HEADER_BYTES = 4 + 1 + 4 + 4 + SALT_BYTES + NONCE_BYTES;
+    private static final int ITERATIONS = 600_000;
+    private static final int MAX_ITERATIONS = ITERATIONS * 16;
+
+    private static final @NotNull SecureRandom RANDOM = new SecureRandom();
+
+    private final int threads;
+
+    public FileCipher(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Encrypts {@code source} into {@code target}, which must not exist yet.
+     *
+     * @return the number of plaintext bytes encrypted
+     */
+    public long encrypt(@NotNull Path source, @NotNull Path target, @NotNull char[] passphrase) throws IOException {
+        @NotNull byte[] salt = new byte[SALT_BYTES];
+        @NotNull byte[] nonce = new byte[NONCE_BYTES];
+        RANDOM.nextBytes(salt);
+        RANDOM.nextBytes(nonce);
+
+        @NotNull ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).put(VERSION).putInt(CHUNK).putInt(ITERATIONS).put(salt).put(nonce);
+        @NotNull SecretKey key = deriveKey(passphrase, salt, ITERATIONS);
+
+        try (@NotNull FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             @NotNull FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            writeFully(out, header.flip(), 0);
+
+            long chunks = Math.max(1, (size + CHUNK - 1) / CHUNK);
+            @NotNull Layout layout = new Layout(header.array(), nonce, chunks);
+            run(chunks, () -> {
+                @NotNull Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                @NotNull ByteBuffer plain = ByteBuffer.allocateDirect(CHUNK);
+                @NotNull ByteBuffer sealed = ByteBuffer.allocateDirect(CHUNK + TAG_BYTES);
+                return index -> {
+                    long offset = index * CHUNK;
+                    plain.clear().limit((int) Math.min(CHUNK, size - offset));
+                    readFully(in, plain, offset);
+                    sealed.clear();
+                    cipher.init(Cipher.ENCRYPT_MODE, key, layout.nonce(index));
+                    cipher.updateAAD(layout.aad(index));
+                    cipher.doFinal(plain.flip(), sealed);
+                    writeFully(out, sealed.flip(), HEADER_BYTES + index * (CHUNK + TAG_BYTES));
+                };
+            });
+            return size;
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    /**
+     * Decrypts {@code source} into {@code target}, which must not exist yet. A wrong passphrase
+     * or any modification of the file is reported as an {@link IOException} and leaves no output.
+     *
+     * @return the number of plaintext bytes recovered
+     */
+    public long decrypt(@NotNull Path source, @NotNull Path target, @NotNull char[] passphrase) throws IOException {
+        try (@NotNull FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            @NotNull ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (in.size() < HEADER_BYTES + TAG_BYTES) {
+                throw new IOException("not an encrypted file");
+            }
+            readFully(in, header, 0);
+            header.flip();
+
+            if (header.getInt() != MAGIC || header.get() != VERSION) {
+                throw new IOException("not an encrypted file");
+            }
+            int chunk = header.getInt();
+            int iterations = header.getInt();
+            // a crafted count could keep the key derivation busy for billions of rounds
+            if (chunk <= 0 || chunk > (1 << 26) || iterations <= 0 || iterations > MAX_ITERATIONS) {
+                throw new IOException("corrupted header");
+            }
+            @NotNull byte[] salt = new byte[SALT_BYTES];
+            @NotNull byte[] nonce = new byte[NONCE_BYTES];
+            header.get(salt).get(nonce);
+            @NotNull SecretKey key = deriveKey(passphrase, salt, iterations);
+
+            long body = in.size() - HEADER_BYTES;
+            long stride = (long) chunk + TAG_BYTES;
+            long chunks = (body + stride - 1) / stride;
+            long lastLength = body - (chunks - 1) * stride;
+            if (lastLength < TAG_BYTES) {
+                throw new IOException("file is truncated");
+            }
+
+            @NotNull Layout layout = new Layout(header.array(), nonce, chunks);
+            try (@NotNull FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                run(chunks, () -> {
+                    @NotNull Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+                    @NotNull ByteBuffer sealed = ByteBuffer.allocateDirect(chunk + TAG_BYTES);
+                    @NotNull ByteBuffer plain = ByteBuffer.allocateDirect(chunk + TAG_BYTES);
+                    return index -> {
+                        long offset = HEADER_BYTES + index * stride;
+                        sealed.clear().limit((int) Math.min(stride, in.size() - offset));
+                        readFully(in, sealed, offset);
+                        plain.clear();
+                        cipher.init(Cipher.DECRYPT_MODE, key, layout.nonce(index));
+                        cipher.updateAAD(layout.aad(index));
+                        try {
+                            cipher.doFinal(sealed.flip(), plain);
+                        } catch (AEADBadTagException e) {
+                            throw new IOException("wrong passphrase or the file was modified (chunk " + index + ")");
+                        }
+                        writeFully(out, plain.flip(), index * chunk);
+                    };
+                });
+                return body - chunks * TAG_BYTES;
+            } catch (FileAlreadyExistsException e) {
+                throw e;
+            } catch (IOException e) {
+                Files.deleteIfExists(target);
+                throw e;
+            }
+        }
+    }
+
+    private void run(long chunks, @NotNull WorkerFactory factory) throws IOException {
+        @NotNull AtomicLong next = new AtomicLong();
+        int workers = (int) Math.min(threads, chunks);
+        @NotNull ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            @NotNull List<Future<Void>> pending = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                pending.add(pool.submit(() -> {
+                    @NotNull ChunkWorker worker = factory.create();
+                    long index;
+                    while ((index = next.getAndIncrement()) < chunks) {
+                        worker.process(index);
+                    }
+                    return null;
+                }));
+            }
+            for (@NotNull Future<Void> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            // make the remaining workers stop at their next chunk
+            next.set(chunks);
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause().getLocalizedMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static @NotNull SecretKey deriveKey(@NotNull char[] passphrase, @NotNull byte[] salt, int iterations) throws IOException {
+        @NotNull PBEKeySpec spec = new PBEKeySpec(passphrase, salt, iterations, 256);
+        try {
+            @NotNull byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(key, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("could not derive the key: " + e.getLocalizedMessage(), e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("file changed size while being read");
+            }
+        }
+        Metrics.Counter.BYTES_READ.add(buffer.position());
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    // Classes
+
+    @FunctionalInterface
+    private interface WorkerFactory {
+        @NotNull ChunkWorker create() throws GeneralSecurityException;
+    }
+
+    @FunctionalInterface
+    private interface ChunkWorker {
+        void process(long index) throws IOException, GeneralSecurityException;
+    }
+
+    private static final class Layout {
+        private final @NotNull byte[] header;
+        private final @NotNull byte[] nonce;
+        private final long chunks;
+
+        private Layout(@NotNull byte[] header, @NotNull byte[] nonce, long chunks) {
+            this.header = header;
+            this.nonce = nonce;
+            this.chunks = chunks;
+        }
+
+        private @NotNull GCMParameterSpec nonce(long index) {
+            @NotNull byte[] derived = Arrays.copyOf(nonce, NONCE_BYTES);
+            for (int i = 0; i < 8; i++) {
+                derived[NONCE_BYTES - 1 - i] ^= (byte) (index >>> (8 * i));
+            }
+            return new GCMParameterSpec(TAG_BYTES * 8, derived);
+        }
+
+        private @NotNull byte[] aad(long index) {
+            return ByteBuffer.allocate(header.length + 9)
+                    .put(header)
+                    .putLong(index)
+                    .put((byte) (index == chunks - 1 ? 1 : 0))
+                    .array();
+        }
+    }
+}
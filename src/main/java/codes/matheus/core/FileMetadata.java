@@ -1,25 +1,104 @@
 package codes.matheus.core;
 
+import codes.matheus.util.Metrics;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Range;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 public final class FileMetadata {
+
+    // static initializers
+
+    /**
+     * Reads the metadata of {@code path} with a single {@code lstat}. Symbolic links cost one
+     * more call to describe their target, as {@link File#isDirectory()} would.
+     */
+    public static @NotNull FileMetadata of(@NotNull Path path) throws IOException {
+        Metrics.Counter.STAT_CALLS.increment();
+        @NotNull BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isSymbolicLink()) {
+            return new FileMetadata(path, attributes);
+        }
+
+        try {
+            Metrics.Counter.STAT_CALLS.increment();
+            return new FileMetadata(path, Files.readAttributes(path, BasicFileAttributes.class), true);
+        } catch (IOException e) {
+            return new FileMetadata(path, attributes, true);
+        }
+    }
+
+    private static @Nullable BasicFileAttributes readAttributes(@NotNull Path path) {
+        try {
+            Metrics.Counter.STAT_CALLS.increment();
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Objects
+
     private final @NotNull String name;
     private final @NotNull String absolutePath;
     private final boolean isDirectory;
+    private final boolean isSymbolicLink;
     @Range(from = 0, to = Long.MAX_VALUE)
-    private final long size;
+    private volatile long size;
+    private volatile long modifiedNanos;
+    private final @Nullable Object fileKey;
+    private volatile @Nullable FileAnalyzer.Summary summary;
+
+    // Constructor
 
     public FileMetadata(@NotNull File file) {
-        this.name = file.getName();
-        this.absolutePath = file.getAbsolutePath();
-        this.isDirectory = file.isDirectory();
-        this.size = file.length();
+        this(file.toPath(), readAttributes(file.toPath()), false);
     }
 
+    public FileMetadata(@NotNull Path path, @NotNull BasicFileAttributes attributes) {
+        this(path, attributes, attributes.isSymbolicLink());
+    }
+
+    FileMetadata(@NotNull String name, @NotNull String absolutePath, boolean isDirectory, boolean isSymbolicLink, long size, long modifiedNanos) {
+        this.name = name;
+        this.absolutePath = absolutePath;
+        this.isDirectory = isDirectory;
+        this.isSymbolicLink = isSymbolicLink;
+        this.size = size;
+        this.modifiedNanos = modifiedNanos;
+        this.fileKey = null;
+    }
+
+    private FileMetadata(@NotNull Path path, @Nullable BasicFileAttributes attributes, boolean isSymbolicLink) {
+        @Nullable Path fileName = path.getFileName();
+        this.name = fileName != null ? fileName.toString() : "";
+        this.absolutePath = path.toAbsolutePath().toString();
+        this.isSymbolicLink = isSymbolicLink;
+
+        if (attributes != null) {
+            this.isDirectory = attributes.isDirectory();
+            this.size = attributes.size();
+            this.modifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            this.fileKey = attributes.fileKey();
+        } else {
+            this.isDirectory = false;
+            this.size = 0;
+            this.modifiedNanos = 0;
+            this.fileKey = null;
+        }
+    }
+
+    // Getters
+
     public @NotNull String getName() {
         return name;
     }
@@ -36,6 +115,64 @@ public final class FileMetadata {
         return isDirectory;
     }
 
+    public boolean isSymbolicLink() {
+        return isSymbolicLink;
+    }
+
+    public long getLastModified() {
+        return TimeUnit.NANOSECONDS.toMillis(modifiedNanos);
+    }
+
+    /**
+     * Modification time at the precision the file system reports, used to tell whether a
+     * directory changed since it was last listed.
+     */
+    public long getModifiedNanos() {
+        return modifiedNanos;
+    }
+
+    /**
+     * The file system's identity for the file (device and inode on Unix), or {@code null} when the
+     * platform has none.
+     */
+    public @Nullable Object getFileKey() {
+        return fileKey;
+    }
+
+    /**
+     * The rolled-up size of everything below this directory as of the last {@code analyze}, or
+     * {@code -1} if it is unknown or something below changed since.
+     */
+    public long getTotalSize() {
+        @Nullable FileAnalyzer.Summary cached = summary;
+        return cached != null ? cached.getTotalSize() : -1;
+    }
+
+    /**
+     * What the last {@code analyze} found below this directory, or {@code null} if it is unknown
+     * or something below changed since.
+     */
+    @Nullable FileAnalyzer.Summary getSummary() {
+        return summary;
+    }
+
+    void setSummary(@Nullable FileAnalyzer.Summary summary) {
+        this.summary = summary;
+    }
+
+    /**
+     * Takes over a newer size and modification time of the same entry, so a node kept across
+     * listings does not show stale attributes.
+     *
+     * @return whether anything changed
+     */
+    boolean update(long size, long modifiedNanos) {
+        if (this.size == size && this.modifiedNanos == modifiedNanos) return false;
+        this.size = size;
+        this.modifiedNanos = modifiedNanos;
+        return true;
+    }
+
     @Override
     public String toString() {
         return (isDirectory ? "[DIR] " : "[FILE] ") + name;
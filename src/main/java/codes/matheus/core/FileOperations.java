@@ -3,63 +3,114 @@ package codes.matheus.core;
 import codes.matheus.cli.Command;
 import codes.matheus.datastructures.tree.NaryTree;
 import codes.matheus.util.Colors;
+import codes.matheus.util.Metrics;
+import codes.matheus.util.OutputSink;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.annotations.Range;
 
-import java.io.BufferedReader;
+import java.io.Console;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.regex.PatternSyntaxException;
 
 public final class FileOperations {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    // more workers than this only contend; a ForkJoinPool refuses more than 32767 anyway
+    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors() * 4;
+    private static final @NotNull DateTimeFormatter MODIFIED = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
     private final @NotNull Core core;
     private final @NotNull BuildTree build;
     private final @NotNull FileAnalyzer analyzer;
-    private final @NotNull Map<String, Consumer<Command>> actions = new HashMap<>();
+    private final @NotNull FileSearch search;
+    private final @NotNull FileTransfer transfer;
+    private final @NotNull FileRemover remover;
+    private final @NotNull DuplicateFinder duplicates;
+    private final @NotNull SortedListings listings;
+    private final @NotNull BulkExecutor bulk;
+    // indexed by Command#getActionId
+    private final @NotNull List<Consumer<Command>> actions = new ArrayList<>(Collections.nCopies(Command.getActionCount(), null));
 
     public FileOperations(@NotNull Core core, @NotNull BuildTree build) {
         this.core = core;
         this.build = build;
         this.analyzer = new FileAnalyzer();
+        this.search = new FileSearch(build);
+        this.transfer = new FileTransfer(Runtime.getRuntime().availableProcessors());
+        this.remover = new FileRemover(Runtime.getRuntime().availableProcessors());
+        this.duplicates = new DuplicateFinder();
+        this.listings = new SortedListings(build);
+        this.bulk = new BulkExecutor(build, Runtime.getRuntime().availableProcessors());
         registerActions();
     }
 
     private void registerActions() {
         // Navigations
-        actions.put("ls", this::ls);
-        actions.put("cd", this::cd);
-        actions.put("pwd", this::pwd);
-        actions.put("find", this::find);
+        register("ls", this::ls);
+        register("cd", this::cd);
+        register("pwd", this::pwd);
+        register("find", this::find);
 
         // analysis
-        actions.put("stats", this::stats);
-        actions.put("analyze", this::analyze);
+        register("stats", this::stats);
+        register("analyze", this::analyze);
+        register("dedupe", this::dedupe);
 
         // io
-        actions.put("mkdir", this::mkdir);
-        actions.put("rm", this::rm);
-        actions.put("print", this::print);
-        actions.put("rename", this::rename);
-        actions.put("mv", this::mv);
+        register("mkdir", this::mkdir);
+        register("rm", this::rm);
+        register("print", this::print);
+        register("cat", this::cat);
+        register("rename", this::rename);
+        register("mv", this::mv);
+        register("cp", this::cp);
+
+        // encoding
+        register("crypto", this::crypto);
+        register("zip", this::zip);
+        register("unzip", this::unzip);
 
         // system
-        actions.put("exit", this::exit);
-        actions.put("clear", this::clear);
+        register("exit", this::exit);
+        register("clear", this::clear);
+        register("watch", this::watch);
+        register("prefetch", this::prefetch);
+        register("metrics", this::metrics);
+    }
+
+    private void register(@NotNull String action, @NotNull Consumer<Command> consumer) {
+        actions.set(Command.getActionId(action), consumer);
     }
 
     public void execute(@NotNull Command command) {
-        @Nullable Consumer<Command> action = actions.get(command.getAction());
+        int id = command.getActionId();
+        @Nullable Consumer<Command> action = id >= 0 ? actions.get(id) : null;
 
         if (action != null) {
             action.accept(command);
         }
     }
 
+    private static @NotNull OutputSink out() {
+        return OutputSink.current();
+    }
+
     private @NotNull String joinArgs(@NotNull Command command) {
         @NotNull StringBuilder builder = new StringBuilder();
         for (int i = 0; i < command.getArgsSize(); i++) {
@@ -72,41 +123,94 @@ public final class FileOperations {
     }
 
     private void ls(@NotNull Command command) {
-        if (command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command don't needs arguments and flags", Colors.RED));
+        if (!FileAnalyzer.validate(core.getCurrent(), command, "--long", "--sort", "--all", "--page", "--page-size")) return;
+
+        @Nullable SortedListings.Sort sort = SortedListings.Sort.of(command.hasFlag("--sort") ? command.getFlag("--sort") : "name");
+        boolean paged = command.hasFlag("--page") || command.hasFlag("--page-size");
+        int page = intFlag(command, "--page", 1);
+        int pageSize = intFlag(command, "--page-size", paged ? DEFAULT_PAGE_SIZE : Integer.MAX_VALUE);
+        if (sort == null || page < 1 || pageSize < 1) {
+            out().println("Usage: ls [path] [--long] [--all] [--sort name|size|mtime] [--page N] [--page-size K]", Colors.RED);
             return;
         }
 
+        @NotNull OutputSink sink = out();
         @NotNull String arg = joinArgs(command);
         @Nullable NaryTree.Node<FileMetadata> targetNode = arg.isEmpty()
                 ? core.getCurrent()
                 : searchPath(arg);
 
-        if (targetNode != null) {
-            if (!targetNode.getValue().isDirectory()) {
-                System.out.println(Colors.format("Error: Path " + command.getArg(0) + " is not a directory", Colors.RED));
-                return;
-            }
+        if (targetNode == null) {
+            sink.println("Error: Path " + arg + " not found", Colors.RED);
+            return;
+        } if (!targetNode.getValue().isDirectory()) {
+            sink.println("Error: Path " + arg + " is not a directory", Colors.RED);
+            return;
+        }
 
-            build.fetchChildren(targetNode);
-            if (targetNode.getChildren().isEmpty()) {
-                System.out.print("Directory is empty.");
-            }
+        build.fetchChildren(targetNode);
+        @NotNull List<FileMetadata> entries = listings.get(targetNode, sort, command.hasFlag("--all"));
+        if (entries.isEmpty()) {
+            sink.println("Directory is empty.");
+            return;
+        }
+
+        // only the visible window is rendered, so paging through a huge directory stays cheap
+        int pages = (int) ((entries.size() + (long) pageSize - 1) / pageSize);
+        int from = (int) Math.min((long) (page - 1) * pageSize, entries.size());
+        @NotNull List<FileMetadata> window = entries.subList(from, (int) Math.min((long) from + pageSize, entries.size()));
 
-            for (@NotNull NaryTree.Node<FileMetadata> child : targetNode.getChildren()) {
-                if (child.getValue().isDirectory()) {
-                    System.out.print(Colors.format(child.getValue().getName() + "/ ", Colors.WHITE));
+        if (command.hasFlag("--long")) {
+            printLong(sink, window);
+        } else {
+            for (@NotNull FileMetadata meta : window) {
+                if (meta.isDirectory()) {
+                    sink.print(meta.getName(), Colors.WHITE).print("/ ");
+                } else {
+                    sink.print(meta.getName()).print(" ");
                 }
             }
-        } else {
-            System.out.print(Colors.format("Error: Path " + arg + " not found", Colors.RED));
+            sink.println();
+        }
+
+        if (paged) {
+            sink.println("Page " + page + " of " + pages + " (" + entries.size() + " entries)", Colors.CYAN);
+        }
+    }
+
+    /**
+     * One line per entry: type, size, modification time and name, with the size column only as
+     * wide as the entries shown need.
+     */
+    private void printLong(@NotNull OutputSink sink, @NotNull List<FileMetadata> window) {
+        @NotNull String[] sizes = new String[window.size()];
+        int width = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = analyzer.formatSize(window.get(i).getSize());
+            width = Math.max(width, sizes[i].length());
+        }
+
+        @NotNull StringBuilder line = new StringBuilder(128);
+        for (int i = 0; i < sizes.length; i++) {
+            @NotNull FileMetadata meta = window.get(i);
+            line.setLength(0);
+            line.append(meta.isSymbolicLink() ? 'l' : meta.isDirectory() ? 'd' : '-').append("  ");
+            for (int pad = sizes[i].length(); pad < width; pad++) line.append(' ');
+            line.append(sizes[i]).append("  ");
+            MODIFIED.formatTo(Instant.EPOCH.plusNanos(meta.getModifiedNanos()), line);
+            line.append("  ");
+            sink.print(line);
+            if (meta.isDirectory()) {
+                sink.println(meta.getName(), "/", Colors.WHITE);
+            } else {
+                sink.println(meta.getName());
+            }
         }
-        System.out.println();
     }
 
     private void cd(@NotNull Command command) {
         if (command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command don't needs arguments and flags", Colors.RED));
+            out().print("The command don't needs arguments and flags", Colors.RED);
             return;
         }
 
@@ -117,59 +221,120 @@ public final class FileOperations {
             if (targetNode != null && targetNode.getValue().isDirectory()) {
                 core.setCurrent(targetNode);
             } else {
-                System.out.println(Colors.format("Error: Path " + path + " not found or is not a directory", Colors.RED));
+                out().println("Error: Path " + path + " not found or is not a directory", Colors.RED);
             }
         } else {
-            if (build.getTree() != null) {
-                @NotNull String rootPath = System.getProperty("user.home");
-                @NotNull NaryTree.Node<FileMetadata> root = Objects.requireNonNull(build.getTree().search(new FileMetadata(new File(rootPath))));
-                core.setCurrent(root);
+            if (build.getRoot() != null) {
+                core.setCurrent(build.getRoot());
             }
         }
     }
 
     private void pwd(@NotNull Command command) {
         if (command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command don't needs arguments and flags", Colors.RED));
+            out().print("The command don't needs arguments and flags", Colors.RED);
             return;
         }
 
         @Nullable NaryTree.Node<FileMetadata> target = core.getCurrent();
         if (target != null) {
-            System.out.println(Colors.format(target.getValue().getAbsolutePath(), Colors.WHITE));
+            out().println(target.getValue().getAbsolutePath(), Colors.WHITE);
         }
     }
 
     private void find(@NotNull Command command) {
         if (!command.hasAnyArg() && !command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command needs arguments and flags", Colors.RED));
+            out().print("The command needs arguments and flags", Colors.RED);
             return;
         }
 
         @Nullable NaryTree.Node<FileMetadata> node = core.getCurrent();
         if (node == null) return;
 
-        @NotNull String query = command.hasFlag("--name") ? command.getFlag("--name") : command.getArg(0);
+        @NotNull String query = command.hasFlag("--glob") ? command.getFlag("--glob")
+                : command.hasFlag("--regex") ? command.getFlag("--regex")
+                : command.hasFlag("--name") ? command.getFlag("--name")
+                : command.hasFlag("--indexed") && !command.getFlag("--indexed").equals("true") ? command.getFlag("--indexed")
+                : command.getArg(0);
 
-        if (query.isEmpty()) {
-            System.out.print(Colors.format("Search query is missing.", Colors.RED));
+        if (query.isEmpty() || query.equals("true")) {
+            out().print("Search query is missing.", Colors.RED);
+            return;
+        }
+
+        @NotNull FileSearch.NameMatcher matcher;
+        try {
+            matcher = command.hasFlag("--glob") ? FileSearch.glob(query)
+                    : command.hasFlag("--regex") ? FileSearch.regex(query)
+                    : FileSearch.substring(query);
+        } catch (PatternSyntaxException e) {
+            out().println("Invalid pattern: " + e.getDescription(), Colors.RED);
             return;
         }
 
         boolean onlyDirs = command.hasFlag("--type") && command.getFlag("--type").equalsIgnoreCase("d");
         boolean onlyFiles = command.hasFlag("--type") && command.getFlag("--type").equalsIgnoreCase("f");
         int maxDepth = Integer.MAX_VALUE;
+        long limit = Long.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
 
         if (command.hasFlag("--maxdepth")) {
             try {
                 maxDepth = Integer.parseInt(command.getFlag("--maxdepth"));
             } catch (NumberFormatException e) {
-                System.out.println(Colors.format("Invalid max depth, using default.", Colors.YELLOW));
+                out().println("Invalid max depth, using default.", Colors.YELLOW);
             }
         }
 
-        System.out.println(Colors.format("Searching for: " + query, Colors.WHITE));
-        searchRec(node, query, onlyDirs, onlyFiles, 0, maxDepth);
+        if (command.hasFlag("--limit")) {
+            try {
+                limit = Long.parseLong(command.getFlag("--limit"));
+            } catch (NumberFormatException e) {
+                out().println("Invalid limit, using default.", Colors.YELLOW);
+            }
+            if (limit < 1) {
+                out().println("Error: --limit must be a positive number", Colors.RED);
+                return;
+            }
+        }
+
+        if (command.hasFlag("--threads")) {
+            try {
+                threads = Math.min(MAX_THREADS, Math.max(1, Integer.parseInt(command.getFlag("--threads"))));
+            } catch (NumberFormatException e) {
+                out().println("Invalid thread count, using default.", Colors.YELLOW);
+            }
+        }
+
+        if (command.hasFlag("--indexed")) {
+            findIndexed(node, query, onlyDirs, onlyFiles, limit);
+            return;
+        }
+
+        out().println("Searching for: " + query, Colors.WHITE);
+        long found = search.search(node, new FileSearch.Options(matcher, onlyDirs, onlyFiles, maxDepth, limit, threads), out());
+        out().println(found + (found == limit ? " matches (limit reached)" : " matches"), Colors.WHITE);
+    }
+
+    private void findIndexed(@NotNull NaryTree.Node<FileMetadata> scope, @NotNull String query, boolean onlyDirs, boolean onlyFiles, long limit) {
+        @Nullable NameIndex index = build.getNameIndex();
+        if (index == null) {
+            index = build.enableNameIndex();
+            out().println("Indexed " + index.size() + " loaded entries", Colors.WHITE);
+        }
+
+        @NotNull String prefix = scope.getValue().getAbsolutePath() + File.separator;
+        @NotNull OutputSink sink = out();
+        long found = 0;
+        for (@NotNull NaryTree.Node<FileMetadata> match : index.search(query)) {
+            @NotNull FileMetadata meta = match.getValue();
+            if (!meta.getAbsolutePath().startsWith(prefix)) continue;
+            if ((onlyDirs && !meta.isDirectory()) || (onlyFiles && meta.isDirectory())) continue;
+
+            sink.println("Found: ", meta.getAbsolutePath(), Colors.GREEN);
+            if (++found >= limit) break;
+        }
+        out().println(found + (found == limit ? " matches (limit reached)" : " matches"), Colors.WHITE);
     }
 
     private void stats(@NotNull Command command) {
@@ -180,56 +345,139 @@ public final class FileOperations {
                 : core.getCurrent();
 
         if (target == null) {
-            System.out.println(Colors.format("Error: path not found", Colors.RED));
+            out().println("Error: path not found", Colors.RED);
             return;
         }
 
         @NotNull FileMetadata meta = target.getValue();
-        System.out.println(Colors.format("--- Statistics: " + meta.getName() + " ---", Colors.CYAN));
-        System.out.println("Type: " + (meta.isDirectory() ? "Directory" : "File"));
-        System.out.println("Path: " + meta.getAbsolutePath());
+        out().println("--- Statistics: " + meta.getName() + " ---", Colors.CYAN);
+        out().println("Type: " + (meta.isDirectory() ? "Directory" : "File"));
+        out().println("Path: " + meta.getAbsolutePath());
 
         if (meta.isDirectory()) {
             build.fetchChildren(target);
-            System.out.println("Children count: " + target.getChildren().size());
+            out().println("Children count: " + target.getChildren().size());
+            long total = meta.getTotalSize();
+            out().println("Total size: " + (total >= 0 ? analyzer.formatSize(total) : "unknown (run analyze)"));
         } else {
-            System.out.println("Size: " + analyzer.formatSize(meta.getSize()));
+            out().println("Size: " + analyzer.formatSize(meta.getSize()));
         }
     }
 
     private void analyze(@NotNull Command command) {
-        if (!FileAnalyzer.validate(core.getCurrent(), command)) return;
+        if (!FileAnalyzer.validate(core.getCurrent(), command, "--threads", "--top", "--compact")) return;
+
+        int threads = threadsFlag(command);
+        if (threads < 1) {
+            out().println("Error: --threads must be a positive number", Colors.RED);
+            return;
+        }
+
+        int top = intFlag(command, "--top", 0);
+        if (top < 0) {
+            out().println("Error: --top must be a positive number", Colors.RED);
+            return;
+        }
 
         @Nullable NaryTree.Node<FileMetadata> target = command.hasAnyArg()
                 ? searchPath(command.getArg(0))
                 : core.getCurrent();
 
         if (target == null) {
-            System.out.println(Colors.format("Error: path not found", Colors.RED));
+            out().println("Error: path not found", Colors.RED);
             return;
         }
 
-        System.out.println(Colors.format("Analyzing: " + target.getValue().getAbsolutePath(), Colors.CYAN));
-        @NotNull FileAnalyzer.Result result = new FileAnalyzer.Result();
-        analysisRec(target, result);
+        out().println("Analyzing: " + target.getValue().getAbsolutePath(), Colors.CYAN);
+        @NotNull FileAnalyzer.Result result;
+        if (command.hasFlag("--compact")) {
+            // scanned into a separate array-based tree instead of being loaded into the shell's tree
+            @NotNull CompactTree compact;
+            try {
+                compact = CompactTree.scan(Path.of(target.getValue().getAbsolutePath()), threads);
+            } catch (IOException e) {
+                out().println("Error: could not scan: " + e.getLocalizedMessage(), Colors.RED);
+                return;
+            }
+            out().println("Compact tree: " + compact.size() + " entries, " + compact.getDistinctNames() + " distinct names, ~"
+                    + analyzer.formatSize(compact.getEstimatedBytes()));
+            result = analyzer.analyze(compact, top);
+        } else {
+            result = analyzer.analyze(build, target, threads, top);
+        }
 
-        System.out.println(Colors.format("\n--- Analysis Results ---", Colors.YELLOW));
-        System.out.println("Total Size:  " + analyzer.formatSize(result.getTotalSize()));
-        System.out.println("Files:       " + result.getFileCount());
-        System.out.println("Directories: " + result.getDirCount());
-        System.out.println("\nExtensions:");
+        out().println("\n--- Analysis Results ---", Colors.YELLOW);
+        out().println("Total Size:  " + analyzer.formatSize(result.getTotalSize()));
+        out().println("Files:       " + result.getFileCount());
+        out().println("Directories: " + result.getDirCount());
+        out().println("\nExtensions:");
         result.getExtensionMap().forEach((ext, count) ->
-                System.out.println(" ." + ext + ": " + count));
-        System.out.println(Colors.format("-----------------------", Colors.YELLOW));
+                out().println(" ." + ext + ": " + count));
+        if (top > 0) {
+            out().println("\nLargest files:");
+            for (@NotNull FileAnalyzer.Ranked ranked : result.getLargestFiles()) {
+                out().printf(" %10s  %s%n", analyzer.formatSize(ranked.getSize()), ranked.getPath());
+            }
+            out().println("\nLargest directories:");
+            for (@NotNull FileAnalyzer.Ranked ranked : result.getLargestDirectories()) {
+                out().printf(" %10s  %s%n", analyzer.formatSize(ranked.getSize()), ranked.getPath());
+            }
+        }
+        out().println("-----------------------", Colors.YELLOW);
+    }
+
+    private void dedupe(@NotNull Command command) {
+        if (!FileAnalyzer.validate(core.getCurrent(), command, "--threads", "--limit")) return;
+
+        int threads = threadsFlag(command);
+        int limit = intFlag(command, "--limit", Integer.MAX_VALUE);
+        if (threads < 1 || limit < 0) {
+            out().println("Error: --threads and --limit must be positive numbers", Colors.RED);
+            return;
+        }
+
+        @Nullable NaryTree.Node<FileMetadata> target = command.hasAnyArg()
+                ? searchPath(command.getArg(0))
+                : core.getCurrent();
+        if (target == null) {
+            out().println("Error: path not found", Colors.RED);
+            return;
+        }
+
+        out().println("Looking for duplicates in: " + target.getValue().getAbsolutePath(), Colors.CYAN);
+        @NotNull DuplicateFinder.Result result = duplicates.find(build, target, threads);
+
+        @NotNull OutputSink sink = out();
+        int shown = 0;
+        for (@NotNull DuplicateFinder.Group group : result.getGroups()) {
+            if (shown++ >= limit) break;
+            sink.println(group.getPaths().size() + " copies of " + analyzer.formatSize(group.getSize())
+                    + " (" + analyzer.formatSize(group.getReclaimable()) + " reclaimable)", Colors.YELLOW);
+            for (@NotNull String path : group.getPaths()) {
+                sink.println("  " + path);
+            }
+        }
+
+        out().println("\n--- Duplicate Results ---", Colors.YELLOW);
+        out().println("Groups:       " + result.getGroups().size());
+        out().println("Reclaimable:  " + analyzer.formatSize(result.getReclaimable()));
+        out().println("Files:        " + result.getScanned() + " scanned, " + result.getSizeCandidates() + " with equal sizes, "
+                + result.getEdgeCandidates() + " with equal edges");
+        out().println("Read:         " + analyzer.formatSize(result.getBytesRead()) + " (" + result.getCacheHits() + " cached hashes)");
+        if (result.getUnreadable() > 0) {
+            out().println("Unreadable:   " + result.getUnreadable() + " files skipped", Colors.RED);
+        }
+        out().println("Time:         " + result.getElapsedMillis() + " ms");
+        out().println("-------------------------", Colors.YELLOW);
     }
 
     private void mkdir(@NotNull Command command) {
         if (core.getCurrent() == null) return;
         if (command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command don't needs flags", Colors.RED));
+            out().print("The command don't needs flags", Colors.RED);
             return;
         } if (!command.hasAnyArg()) {
-            System.out.print(Colors.format("The command needs arg", Colors.RED));
+            out().print("The command needs arg", Colors.RED);
             return;
         }
 
@@ -237,7 +485,7 @@ public final class FileOperations {
         @NotNull File target = new File(core.getCurrent().getValue().getAbsolutePath(), path);
 
         if (target.exists()) {
-            System.out.println(Colors.format("Error: path already exists", Colors.RED));
+            out().println("Error: path already exists", Colors.RED);
             return;
         }
         if (target.mkdirs()) {
@@ -245,29 +493,31 @@ public final class FileOperations {
             @Nullable NaryTree.Node<FileMetadata> parentNode = searchPath(parent);
 
             if (parentNode != null) {
-                parentNode.getChildren().clear();
-                build.fetchChildren(parentNode);
+                build.refresh(parentNode);
             }
-            System.out.println(Colors.format("Directory structure created: " + path, Colors.GREEN));
+            out().println("Directory structure created: " + path, Colors.GREEN);
         } else {
-            System.out.println(Colors.format("Error: failed to create structure", Colors.RED));
+            out().println("Error: failed to create structure", Colors.RED);
         }
     }
 
     private void rm(@NotNull Command command) {
         if (core.getCurrent() == null) return;
         if (command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command don't needs flags", Colors.RED));
+            out().print("The command don't needs flags", Colors.RED);
             return;
         } if (!command.hasAnyArg()) {
-            System.out.print(Colors.format("The command needs arg", Colors.RED));
+            out().print("The command needs arg", Colors.RED);
+            return;
+        } if (hasPattern(command, command.getArgsSize())) {
+            rmAll(command);
             return;
         }
 
         @NotNull String path = joinArgs(command);
         @NotNull File target = new File(core.getCurrent().getValue().getAbsolutePath(), path);
         if (!target.exists()) {
-            System.out.println(Colors.format("Error: path not found", Colors.RED));
+            out().println("Error: path not found", Colors.RED);
             return;
         }
 
@@ -277,56 +527,174 @@ public final class FileOperations {
         }
 
         @Nullable NaryTree.Node<FileMetadata> parentNode = searchPath(parentPath);
-        deleteRec(target);
-        if (parentNode != null) {
-            parentNode.clear();
-            build.fetchChildren(parentNode);
-            System.out.println(Colors.format("Removed: " + path, Colors.GREEN));
-        } else {
-            core.getCurrent().clear();
-            build.fetchChildren(core.getCurrent());
+        @NotNull FileRemover.Report report = remover.delete(target.toPath());
+        build.refresh(parentNode != null ? parentNode : core.getCurrent());
+
+        @NotNull String summary = report.getFiles() + " files, " + report.getDirectories() + " directories, "
+                + analyzer.formatSize(report.getBytes()) + " freed in " + report.getElapsedMillis() + " ms";
+        if (report.isComplete()) {
+            out().println("Removed: " + path + " (" + summary + ")", Colors.GREEN);
+            return;
+        }
+
+        out().println("Partially removed: " + path + " (" + summary + ")", Colors.YELLOW);
+        printFailures(report.getFailed(), "entries could not be removed:");
+    }
+
+    private void rmAll(@NotNull Command command) {
+        @Nullable List<NaryTree.Node<FileMetadata>> sources = resolveSources(command, command.getArgsSize());
+        if (sources == null) return;
+
+        @NotNull List<Path> paths = new ArrayList<>(sources.size());
+        for (@NotNull NaryTree.Node<FileMetadata> source : sources) {
+            paths.add(Path.of(source.getValue().getAbsolutePath()));
+        }
+        @NotNull FileRemover.Report report = remover.deleteAll(paths);
+        bulk.refreshParents(sources, List.of());
+
+        @NotNull String summary = report.getFiles() + " files, " + report.getDirectories() + " directories, "
+                + analyzer.formatSize(report.getBytes()) + " freed in " + report.getElapsedMillis() + " ms";
+        if (report.isComplete()) {
+            out().println("Removed " + sources.size() + " matches (" + summary + ")", Colors.GREEN);
+            return;
+        }
+        out().println("Partially removed " + sources.size() + " matches (" + summary + ")", Colors.YELLOW);
+        printFailures(report.getFailed(), "entries could not be removed:");
+    }
+
+    private boolean hasPattern(@NotNull Command command, int count) {
+        for (int i = 0; i < count; i++) {
+            if (pattern(command, i) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The glob the argument at {@code index} spells, or {@code null} if it has no unquoted
+     * metacharacters or names an existing file as it is, as {@code data[1].csv} may.
+     */
+    private @Nullable String pattern(@NotNull Command command, int index) {
+        @Nullable String pattern = command.getPattern(index);
+        if (pattern == null || core.getCurrent() == null) return null;
+        @NotNull Path literal = Path.of(core.getCurrent().getValue().getAbsolutePath()).resolve(command.getArg(index));
+        return Files.exists(literal, LinkOption.NOFOLLOW_LINKS) ? null : pattern;
+    }
+
+    /**
+     * Resolves the first {@code count} arguments against the tree, as globs where they are ones,
+     * or prints why it could not and returns {@code null}.
+     */
+    private @Nullable List<NaryTree.Node<FileMetadata>> resolveSources(@NotNull Command command, int count) {
+        @NotNull List<NaryTree.Node<FileMetadata>> sources = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                @Nullable String pattern = pattern(command, i);
+                sources.addAll(bulk.resolve(Objects.requireNonNull(core.getCurrent()),
+                        pattern != null ? pattern : BulkExecutor.escape(command.getArg(i))));
+            }
+        } catch (PatternSyntaxException e) {
+            out().println("Invalid pattern: " + e.getDescription(), Colors.RED);
+            return null;
+        }
+
+        if (sources.isEmpty()) {
+            out().println("Error: no matches", Colors.RED);
+            return null;
+        }
+        return BulkExecutor.outermost(sources);
+    }
+
+    private void printFailures(@NotNull List<String> failed, @NotNull String label) {
+        out().println(failed.size() + " " + label, Colors.RED);
+        for (int i = 0; i < Math.min(failed.size(), 20); i++) {
+            out().println("  " + failed.get(i), Colors.RED);
+        }
+        if (failed.size() > 20) {
+            out().println("  ... and " + (failed.size() - 20) + " more", Colors.RED);
         }
     }
 
     private void print(@NotNull Command command) {
+        stream(command, true);
+    }
+
+    private void cat(@NotNull Command command) {
+        stream(command, false);
+    }
+
+    private void stream(@NotNull Command command, boolean framed) {
         if (core.getCurrent() == null) return;
-        if (command.hasAnyFlag()) {
-            System.out.print(Colors.format("The command don't needs flags", Colors.RED));
+        if (!FileAnalyzer.validate(core.getCurrent(), command, "--head", "--tail", "--range")) {
             return;
         } if (!command.hasAnyArg()) {
-            System.out.print(Colors.format("The command needs arg", Colors.RED));
+            out().print("The command needs arg", Colors.RED);
             return;
         }
 
         @NotNull String path = joinArgs(command);
         @NotNull File target = new File(core.getCurrent().getValue().getAbsolutePath(), path);
         if (!target.exists()) {
-            System.out.println(Colors.format("Error: path not found", Colors.RED));
+            out().println("Error: path not found", Colors.RED);
             return;
         } if (target.isDirectory()) {
-            System.out.println(Colors.format("Error: path " + path + "is directory", Colors.RED));
+            out().println("Error: path " + path + "is directory", Colors.RED);
             return;
         }
 
-        try (@NotNull BufferedReader reader = new BufferedReader(new FileReader(target))) {
-            @NotNull String line;
-            System.out.println(Colors.format("--- Content of: " + path + " ---", Colors.CYAN));
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+        @NotNull FileStreamer streamer = new FileStreamer(target.toPath());
+        try {
+            if (framed) {
+                out().println("--- Content of: " + path + " ---", Colors.CYAN);
+            }
+
+            int last;
+            if (command.hasFlag("--head")) {
+                last = streamer.head(Long.parseLong(command.getFlag("--head")));
+            } else if (command.hasFlag("--tail")) {
+                last = streamer.tail(Long.parseLong(command.getFlag("--tail")));
+            } else if (command.hasFlag("--range")) {
+                @NotNull String range = command.getFlag("--range");
+                int colon = range.indexOf(':');
+                if (colon < 0) {
+                    out().println("Usage: --range start:end (in bytes, end optional)", Colors.RED);
+                    return;
+                }
+                long start = Long.parseLong(range.substring(0, colon));
+                long end = colon == range.length() - 1 ? Long.MAX_VALUE : Long.parseLong(range.substring(colon + 1));
+                if (start < 0 || end < start) {
+                    out().println("Error: invalid range " + range, Colors.RED);
+                    return;
+                }
+                last = streamer.range(start, end);
+            } else {
+                last = streamer.all();
+            }
+
+            if (last != -1 && last != '\n') {
+                out().println();
             }
-            System.out.println(Colors.format("---------------------------", Colors.CYAN));
+            if (framed) {
+                out().println("---------------------------", Colors.CYAN);
+            }
+        } catch (NumberFormatException e) {
+            out().println("Error: expected a number: " + e.getLocalizedMessage(), Colors.RED);
         } catch (IOException e) {
-            System.out.println(Colors.format("Error reading the file: " + e.getLocalizedMessage(), Colors.RED));
+            out().println("Error reading the file: " + e.getLocalizedMessage(), Colors.RED);
         }
     }
 
     private void rename(@NotNull Command command) {
         if (core.getCurrent() == null) return;
         if (command.hasAnyFlag()) {
-            System.out.println(Colors.format("The command don't needs flags", Colors.RED));
+            out().println("The command don't needs flags", Colors.RED);
             return;
         } if (!command.hasAnyArg()) {
-            System.out.println(Colors.format("The command needs arg", Colors.RED));
+            out().println("The command needs arg", Colors.RED);
+            return;
+        }
+
+        if (hasPattern(command, 1)) {
+            renameAll(command);
             return;
         }
 
@@ -334,7 +702,7 @@ public final class FileOperations {
         @NotNull String newName = command.getArg(1);
         @NotNull File origin = new File(core.getCurrent().getValue().getAbsolutePath(), path);
         if (!origin.exists()) {
-            System.out.println(Colors.format("The file or folder doesn't exists", Colors.RED));
+            out().println("The file or folder doesn't exists", Colors.RED);
             return;
         }
 
@@ -344,26 +712,66 @@ public final class FileOperations {
 
         if (origin.renameTo(target)) {
             if (parentNode != null) {
-                parentNode.clear();
-                build.fetchChildren(parentNode);
-                System.out.println(Colors.format("Renamed successfully: " + path + " -> " + newName, Colors.GREEN));
+                build.refresh(parentNode);
+                out().println("Renamed successfully: " + path + " -> " + newName, Colors.GREEN);
             } else {
-                core.getCurrent().clear();
-                build.fetchChildren(core.getCurrent());
-                System.out.println(Colors.format("Renamed successfully (view refreshed)", Colors.GREEN));
+                build.refresh(core.getCurrent());
+                out().println("Renamed successfully (view refreshed)", Colors.GREEN);
             }
         } else {
-            System.out.println(Colors.format("Error: Could not rename. Check if target name already exists.", Colors.RED));
+            out().println("Error: Could not rename. Check if target name already exists.", Colors.RED);
+        }
+    }
+
+    /**
+     * {@code rename <pattern> <name>}, where the last segment of the pattern and the new name both
+     * hold exactly one {@code *}: whatever the {@code *} matched in each source name takes its place
+     * in the new name, as in {@code rename *.jpeg *.jpg}.
+     */
+    private void renameAll(@NotNull Command command) {
+        @NotNull String pattern = Objects.requireNonNull(pattern(command, 0));
+        @NotNull String replacement = command.getArg(1);
+        @NotNull String last = pattern.substring(pattern.lastIndexOf('/') + 1);
+        int star = BulkExecutor.indexOfUnescaped(last, '*');
+        if (command.getArgsSize() != 2 || star < 0 || BulkExecutor.isPattern(last.substring(0, star) + last.substring(star + 1))
+                || replacement.indexOf('*') < 0 || replacement.indexOf('*') != replacement.lastIndexOf('*') || replacement.contains("/")) {
+            out().println("Usage: rename <pattern with one *> <new name with one *>, e.g. rename *.jpeg *.jpg", Colors.RED);
+            return;
+        }
+
+        @Nullable List<NaryTree.Node<FileMetadata>> sources = resolveSources(command, 1);
+        if (sources == null) return;
+
+        @NotNull String prefix = BulkExecutor.unescape(last.substring(0, star));
+        @NotNull String suffix = BulkExecutor.unescape(last.substring(star + 1));
+        @NotNull BulkExecutor.Report report = bulk.run(sources, source -> {
+            @NotNull String name = source.getFileName().toString();
+            @NotNull String matched = name.substring(prefix.length(), name.length() - suffix.length());
+            Files.move(source, source.resolveSibling(replacement.replace("*", matched)));
+        }, List.of());
+
+        printBulk(report, "Renamed", sources.size());
+    }
+
+    private void printBulk(@NotNull BulkExecutor.Report report, @NotNull String verb, int matches) {
+        if (report.isComplete()) {
+            out().println(verb + " " + matches + " matches in " + report.getElapsedMillis() + " ms", Colors.GREEN);
+            return;
         }
+        out().println(verb + " " + report.getDone() + " of " + matches + " matches in " + report.getElapsedMillis() + " ms", Colors.YELLOW);
+        printFailures(report.getFailed(), "failed:");
     }
 
     private void mv(@NotNull Command command) {
         if (core.getCurrent() == null) return;
         if (command.hasAnyFlag()) {
-            System.out.println(Colors.format("The command don't needs flags", Colors.RED));
+            out().println("The command don't needs flags", Colors.RED);
             return;
         } if (!command.hasAnyArg() || command.getArgsSize() < 2) {
-            System.out.println(Colors.format("Usage: mv <source> <target_directory>", Colors.RED));
+            out().println("Usage: mv <source>... <target_directory>", Colors.RED);
+            return;
+        } if (hasPattern(command, command.getArgsSize() - 1)) {
+            mvAll(command);
             return;
         }
 
@@ -374,42 +782,427 @@ public final class FileOperations {
         @NotNull File file = new File(target, origin.getName());
 
         if (!origin.exists()) {
-            System.out.println(Colors.format("Source file not found", Colors.RED));
+            out().println("Source file not found", Colors.RED);
+            return;
+        } if (!target.isDirectory()) {
+            out().println("Error: target " + targetPath + " is not a directory", Colors.RED);
+            return;
+        } if (file.exists()) {
+            out().println("Error: " + file.getPath() + " already exists", Colors.RED);
             return;
         }
 
-        if (origin.renameTo(file)) {
-            @NotNull String parentOriginPath = ".";
-            if (originPath.contains("/")) {
-                parentOriginPath = originPath.substring(0, originPath.lastIndexOf("/"));
+        @NotNull FileTransfer.Result result;
+        try {
+            result = transfer.move(origin.toPath(), file.toPath(), progressPrinter("Moving"));
+        } catch (IOException e) {
+            out().println("\nError: could not move " + originPath + ": " + e.getLocalizedMessage(), Colors.RED);
+            return;
+        }
+
+        @NotNull String parentOriginPath = ".";
+        if (originPath.contains("/")) {
+            parentOriginPath = originPath.substring(0, originPath.lastIndexOf("/"));
+        }
+
+        @NotNull String parentTargetPath = targetPath;
+        @Nullable NaryTree.Node<FileMetadata> nodeOrigin = searchPath(parentOriginPath);
+        @Nullable NaryTree.Node<FileMetadata> nodeTarget = searchPath(parentTargetPath);
+
+        if (nodeOrigin != null) {
+            build.refresh(nodeOrigin);
+        } else {
+            build.refresh(core.getCurrent());
+        }
+
+        if (nodeTarget != null) {
+            build.refresh(nodeTarget);
+        }
+
+        if (result.isAtomic()) {
+            out().println("Moved successfully", Colors.GREEN);
+        } else {
+            out().println("\nMoved across file systems: " + result.getFiles() + " files, "
+                    + analyzer.formatSize(result.getBytes()), Colors.GREEN);
+        }
+    }
+
+    private void mvAll(@NotNull Command command) {
+        @NotNull String targetPath = command.getArg(command.getArgsSize() - 1);
+        @Nullable NaryTree.Node<FileMetadata> targetNode = searchPath(targetPath);
+        if (targetNode == null || !targetNode.getValue().isDirectory()) {
+            out().println("Error: target " + targetPath + " is not a directory", Colors.RED);
+            return;
+        }
+
+        @Nullable List<NaryTree.Node<FileMetadata>> sources = resolveSources(command, command.getArgsSize() - 1);
+        if (sources == null) return;
+
+        // the moves run concurrently, so two sources of the same name must not even get started
+        @NotNull Map<String, String> destinations = new HashMap<>();
+        for (@NotNull NaryTree.Node<FileMetadata> source : sources) {
+            @NotNull FileMetadata meta = source.getValue();
+            @Nullable String other = destinations.putIfAbsent(meta.getName(), meta.getAbsolutePath());
+            if (other != null) {
+                out().println("Error: " + other + " and " + meta.getAbsolutePath() + " would both be moved to "
+                        + targetPath + "/" + meta.getName(), Colors.RED);
+                return;
             }
+        }
+
+        @NotNull Path target = Path.of(targetNode.getValue().getAbsolutePath());
+        @NotNull BulkExecutor.Report report = bulk.run(sources, source -> {
+            if (target.startsWith(source)) {
+                throw new IOException("cannot move a directory into itself");
+            }
+            // fails rather than replaces if the destination exists
+            transfer.move(source, target.resolve(source.getFileName()), (files, bytes) -> {
+            });
+        }, List.of(targetNode));
+
+        printBulk(report, "Moved", sources.size());
+    }
 
-            @NotNull String parentTargetPath = targetPath;
-            @Nullable NaryTree.Node<FileMetadata> nodeOrigin = searchPath(parentOriginPath);
-            @Nullable NaryTree.Node<FileMetadata> nodeTarget = searchPath(parentTargetPath);
+    /**
+     * {@code cp [-r] <source> <target>} copies into {@code target} if it is a directory, and to
+     * {@code target} otherwise. The copy is inserted into the tree from what was copied, so the
+     * target directory is not listed again.
+     */
+    private void cp(@NotNull Command command) {
+        if (core.getCurrent() == null) return;
+        boolean recursive = command.getArg(0).equals("-r");
+        int first = recursive ? 1 : 0;
+        if (command.hasAnyFlag() || command.getArgsSize() - first != 2) {
+            out().println("Usage: cp [-r] <source> <target>", Colors.RED);
+            return;
+        }
 
-            if (nodeOrigin != null) {
-                nodeOrigin.clear();
-                build.fetchChildren(nodeOrigin);
+        @NotNull Path current = Path.of(core.getCurrent().getValue().getAbsolutePath());
+        @NotNull Path source = current.resolve(command.getArg(first)).normalize();
+        @NotNull Path target = current.resolve(command.getArg(first + 1)).normalize();
+        if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+            out().println("Source file not found", Colors.RED);
+            return;
+        } if (!recursive && Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS)) {
+            out().println("Error: " + command.getArg(first) + " is a directory (use cp -r)", Colors.RED);
+            return;
+        }
+
+        if (Files.isDirectory(target)) {
+            target = target.resolve(Objects.requireNonNull(source.getFileName()).toString());
+        }
+        @Nullable Path parent = target.getParent();
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            out().println("Error: " + target + " already exists", Colors.RED);
+            return;
+        } if (parent == null || !Files.isDirectory(parent)) {
+            out().println("Error: target directory " + parent + " not found", Colors.RED);
+            return;
+        } if (target.startsWith(source)) {
+            out().println("Error: cannot copy a directory into itself", Colors.RED);
+            return;
+        }
+
+        // the tree can only be updated in place if it was up to date with the target directory
+        @Nullable NaryTree.Node<FileMetadata> parentNode = build.find(parent.toString());
+        boolean upToDate = parentNode != null && Objects.equals(build.getListedAt(parentNode), modifiedNanos(parent));
+
+        long start = System.nanoTime();
+        @NotNull FileTransfer.Result result;
+        try {
+            result = transfer.copy(source, target, progressPrinter("Copying"));
+        } catch (IOException e) {
+            out().println("\nError: could not copy " + command.getArg(first) + ": " + e.getLocalizedMessage(), Colors.RED);
+            refreshDirectory(parent);
+            return;
+        }
+
+        if (parentNode != null) {
+            @Nullable Long modified = modifiedNanos(parent);
+            if (upToDate && modified != null) {
+                insertCopied(parentNode, Objects.requireNonNull(result.getCopied()));
+                build.markListed(parentNode, modified);
             } else {
-                core.getCurrent().clear();
-                build.fetchChildren(core.getCurrent());
+                build.invalidate(parentNode);
             }
+        }
+        out().println("\nCopied " + result.getFiles() + " files, " + analyzer.formatSize(result.getBytes()) + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms", Colors.GREEN);
+    }
+
+    private void insertCopied(@NotNull NaryTree.Node<FileMetadata> parentNode, @NotNull FileTransfer.Copied copied) {
+        @NotNull FileMetadata meta = copied.getMetadata();
+        @Nullable NaryTree.Node<FileMetadata> node = build.insertCreated(parentNode, meta);
+        if (node == null || !meta.isDirectory() || meta.isSymbolicLink()) return;
 
-            if (nodeTarget != null) {
-                nodeTarget.clear();
-                build.fetchChildren(nodeTarget);
+        for (@NotNull FileTransfer.Copied child : copied.getChildren()) {
+            insertCopied(node, child);
+        }
+        build.markListed(node, meta.getModifiedNanos());
+    }
+
+    private static @Nullable Long modifiedNanos(@NotNull Path directory) {
+        try {
+            return Files.getLastModifiedTime(directory).to(TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private @NotNull FileTransfer.Progress progressPrinter(@NotNull String label) {
+        @NotNull AtomicLong lastPrint = new AtomicLong();
+        // progress is reported from worker threads, but belongs in this command's output
+        @NotNull OutputSink sink = out();
+        return (files, bytes) -> {
+            long now = System.nanoTime();
+            long last = lastPrint.get();
+            if (now - last > 200_000_000L && lastPrint.compareAndSet(last, now)) {
+                sink.print("\r" + label + ": " + files + " files, " + analyzer.formatSize(bytes)).flush();
             }
-            System.out.println(Colors.format("Moved successfully", Colors.GREEN));
+        };
+    }
+
+    private void crypto(@NotNull Command command) {
+        if (!FileAnalyzer.validate(core.getCurrent(), command, "--encrypt", "--decrypt", "--out", "--pass", "--threads")) return;
+
+        boolean encrypt = command.hasFlag("--encrypt");
+        @NotNull String mode = encrypt ? "--encrypt" : "--decrypt";
+        if (encrypt == command.hasFlag("--decrypt")) {
+            out().println("Usage: crypto <file> --encrypt|--decrypt [--out path] [--pass passphrase] [--threads N]", Colors.RED);
+            return;
+        }
+
+        // "crypto --encrypt file" parses the file as the flag's value
+        @NotNull String file = command.hasAnyArg() ? command.getArg(0) : command.getFlag(mode);
+        if (file.isEmpty() || file.equals("true")) {
+            out().println("Error: no file given", Colors.RED);
+            return;
+        }
+
+        int threads = threadsFlag(command);
+        if (threads < 1) {
+            out().println("Error: --threads must be a positive number", Colors.RED);
+            return;
+        }
+
+        @NotNull Path current = Path.of(Objects.requireNonNull(core.getCurrent()).getValue().getAbsolutePath());
+        @NotNull Path source = current.resolve(file).normalize();
+        if (!Files.isRegularFile(source)) {
+            out().println("Error: file not found", Colors.RED);
+            return;
+        }
+
+        @NotNull String name = source.getFileName().toString();
+        @NotNull Path target = command.hasFlag("--out")
+                ? current.resolve(command.getFlag("--out")).normalize()
+                : source.resolveSibling(encrypt ? name + ".enc" : name.endsWith(".enc") ? name.substring(0, name.length() - 4) : name + ".dec");
+        if (Files.exists(target)) {
+            out().println("Error: " + target + " already exists", Colors.RED);
+            return;
+        }
+
+        @Nullable char[] passphrase = readPassphrase(command, encrypt);
+        if (passphrase == null) return;
+
+        long start = System.nanoTime();
+        try {
+            @NotNull FileCipher cipher = new FileCipher(threads);
+            long bytes = encrypt ? cipher.encrypt(source, target, passphrase) : cipher.decrypt(source, target, passphrase);
+            out().println((encrypt ? "Encrypted " : "Decrypted ") + analyzer.formatSize(bytes) + " -> " + target
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms", Colors.GREEN);
+        } catch (IOException e) {
+            out().println("Error: " + e.getLocalizedMessage(), Colors.RED);
+        } finally {
+            Arrays.fill(passphrase, '\0');
+        }
+        refreshDirectory(target.getParent());
+    }
+
+    private static @Nullable char[] readPassphrase(@NotNull Command command, boolean confirm) {
+        // a bare --pass gets the parser's "true", which is not meant as the passphrase: ask instead
+        @NotNull String given = command.getFlag("--pass");
+        if (!given.isEmpty() && !given.equals("true")) {
+            return given.toCharArray();
+        }
+
+        @Nullable Console console = System.console();
+        if (console == null) {
+            out().println("Error: no console to read the passphrase from; use --pass <passphrase>", Colors.RED);
+            return null;
+        }
+
+        out().flush();
+        @Nullable char[] passphrase = console.readPassword("Passphrase: ");
+        if (passphrase == null || passphrase.length == 0) {
+            out().println("Error: empty passphrase", Colors.RED);
+            return null;
+        }
+        if (confirm) {
+            @Nullable char[] again = console.readPassword("Repeat passphrase: ");
+            if (!Arrays.equals(passphrase, again)) {
+                out().println("Error: passphrases do not match", Colors.RED);
+                return null;
+            }
+        }
+        return passphrase;
+    }
+
+    private void zip(@NotNull Command command) {
+        if (!FileAnalyzer.validate(core.getCurrent(), command, "--out", "--level", "--threads")) return;
+        if (!command.hasAnyArg()) {
+            out().println("Usage: zip <path> [--out archive.zip] [--level 0-9] [--threads N]", Colors.RED);
+            return;
+        }
+
+        @Nullable NaryTree.Node<FileMetadata> source = searchPath(command.getArg(0));
+        if (source == null) {
+            out().println("Error: path not found", Colors.RED);
+            return;
+        }
+
+        int threads = threadsFlag(command);
+        int level = intFlag(command, "--level", 6);
+        if (threads < 1 || level < 0 || level > 9) {
+            out().println("Error: --threads must be positive and --level between 0 and 9", Colors.RED);
+            return;
+        }
+
+        @NotNull Path current = Path.of(Objects.requireNonNull(core.getCurrent()).getValue().getAbsolutePath());
+        @NotNull Path archive = current.resolve(command.hasFlag("--out")
+                ? command.getFlag("--out")
+                : source.getValue().getName() + ".zip").normalize();
+        if (Files.exists(archive)) {
+            out().println("Error: " + archive + " already exists", Colors.RED);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            @NotNull ZipArchiver.Stats stats = new ZipArchiver(threads, level).zip(build, source, archive);
+            out().println("Archived " + stats.getFiles() + " files and " + stats.getDirectories() + " directories: "
+                    + analyzer.formatSize(stats.getBytes()) + " -> " + analyzer.formatSize(stats.getCompressedBytes())
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms", Colors.GREEN);
+        } catch (IOException e) {
+            out().println("Error: could not create " + archive + ": " + e.getLocalizedMessage(), Colors.RED);
+            try {
+                Files.deleteIfExists(archive);
+            } catch (IOException ignored) {
+                // the partial archive is left behind; the error above already says why
+            }
+        }
+        refreshDirectory(archive.getParent());
+    }
+
+    private void unzip(@NotNull Command command) {
+        if (!FileAnalyzer.validate(core.getCurrent(), command, "--out", "--threads", "--overwrite")) return;
+        if (!command.hasAnyArg()) {
+            out().println("Usage: unzip <archive.zip> [--out directory] [--threads N] [--overwrite]", Colors.RED);
+            return;
+        }
+
+        int threads = threadsFlag(command);
+        if (threads < 1) {
+            out().println("Error: --threads must be a positive number", Colors.RED);
+            return;
+        }
+
+        @NotNull Path current = Path.of(Objects.requireNonNull(core.getCurrent()).getValue().getAbsolutePath());
+        @NotNull Path archive = current.resolve(command.getArg(0)).normalize();
+        @NotNull Path target = command.hasFlag("--out") ? current.resolve(command.getFlag("--out")).normalize() : current;
+        if (!Files.isRegularFile(archive)) {
+            out().println("Error: archive not found", Colors.RED);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(target);
+            @NotNull ZipArchiver.Stats stats = new ZipArchiver(threads, 0).unzip(archive, target, command.hasFlag("--overwrite"));
+            out().println("Extracted " + stats.getFiles() + " files and " + stats.getDirectories() + " directories: "
+                    + analyzer.formatSize(stats.getCompressedBytes()) + " -> " + analyzer.formatSize(stats.getBytes())
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms", Colors.GREEN);
+        } catch (IOException e) {
+            out().println("Error: could not extract " + archive + ": " + e.getLocalizedMessage(), Colors.RED);
+        }
+        refreshDirectory(target);
+        refreshDirectory(target.getParent());
+    }
+
+    private void refreshDirectory(@Nullable Path directory) {
+        if (directory == null) return;
+        @Nullable NaryTree.Node<FileMetadata> node = build.find(directory.toString());
+        if (node != null) {
+            build.refresh(node);
+        }
+    }
+
+    /**
+     * The {@code --threads} flag capped at {@link #MAX_THREADS}, the number of processors if it is
+     * absent, or {@code -1} if it is not a number.
+     */
+    private static int threadsFlag(@NotNull Command command) {
+        int threads = intFlag(command, "--threads", Runtime.getRuntime().availableProcessors());
+        return threads < 1 ? -1 : Math.min(threads, MAX_THREADS);
+    }
+
+    private static int intFlag(@NotNull Command command, @NotNull String flag, int fallback) {
+        if (!command.hasFlag(flag)) return fallback;
+        try {
+            return Integer.parseInt(command.getFlag(flag));
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
     private void exit(@NotNull Command command) {
+        if (!FileAnalyzer.validateFlags(command, "--metrics")) return;
+
+        if (command.hasFlag("--metrics")) {
+            // without a loaded tree, relative to where the shell was started
+            @NotNull String base = core.getCurrent() != null ? core.getCurrent().getValue().getAbsolutePath() : System.getProperty("user.dir");
+            @NotNull Path file = Path.of(base).resolve(command.getFlag("--metrics"));
+            try {
+                Files.writeString(file, Metrics.toJson());
+                out().println("Metrics written to " + file, Colors.GREEN);
+            } catch (IOException e) {
+                out().println("Error: could not write metrics: " + e.getLocalizedMessage(), Colors.RED);
+                return;
+            }
+        }
         if (command.getAction().equals("exit")) {
             core.setRunning(false);
         }
     }
 
+    private void metrics(@NotNull Command command) {
+        if (!FileAnalyzer.validateFlags(command, "--reset")) return;
+
+        if (command.hasFlag("--reset")) {
+            Metrics.reset();
+            out().println("Metrics reset", Colors.GREEN);
+            return;
+        }
+
+        out().println("--- Command latency ---", Colors.CYAN);
+        out().printf("%-10s %8s %10s %10s %10s%n", "command", "count", "p50", "p99", "max");
+        Metrics.commands().forEach((action, histogram) -> out().printf("%-10s %8d %10s %10s %10s%n", action, histogram.getCount(),
+                formatNanos(histogram.getPercentile(50)), formatNanos(histogram.getPercentile(99)), formatNanos(histogram.getMax())));
+
+        out().println("--- File system ---", Colors.CYAN);
+        out().println("Directories listed: " + Metrics.Counter.DIRECTORIES_LISTED.get()
+                + " (" + formatNanos(Metrics.Counter.LISTING_NANOS.get()) + " listing)");
+        out().println("Stat calls:         " + Metrics.Counter.STAT_CALLS.get());
+        out().println("Nodes created:      " + Metrics.Counter.NODES_CREATED.get());
+        out().println("Bytes read:         " + analyzer.formatSize(Metrics.Counter.BYTES_READ.get()));
+    }
+
+    private static @NotNull String formatNanos(long nanos) {
+        if (nanos < 1_000) return nanos + " ns";
+        if (nanos < 1_000_000) return String.format("%.1f us", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format("%.1f ms", nanos / 1e6);
+        return String.format("%.2f s", nanos / 1e9);
+    }
+
     private void clear(@NotNull Command command) {
         try {
             @NotNull String os = System.getProperty("os.name");
@@ -417,62 +1210,68 @@ public final class FileOperations {
             if (os.contains("Windows")) {
                 new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
             } else {
-                System.out.print("\033[H\033[2J");
-                System.out.flush();
+                out().print("\033[H\033[2J").flush();
             }
         } catch (Exception e) {
-            for (int i = 0; i < 50; i++) System.out.println();
+            for (int i = 0; i < 50; i++) out().println();
         }
     }
 
-    private void deleteRec(@NotNull File file) {
-        @NotNull File[] children = file.listFiles();
-        if (children != null) {
-            for (@NotNull File child : children) {
-                deleteRec(child);
-            }
+    private void watch(@NotNull Command command) {
+        if (command.hasAnyFlag()) {
+            out().println("The command don't needs flags", Colors.RED);
+            return;
         }
-        file.delete();
-    }
 
-    private void analysisRec(@NotNull NaryTree.Node<FileMetadata> node, @NotNull FileAnalyzer.Result result) {
-        build.fetchChildren(node);
-        for (@NotNull NaryTree.Node<FileMetadata> child : node.getChildren()) {
-            @NotNull FileMetadata meta = child.getValue();
-
-            if (meta.isDirectory()) {
-                result.addDirectory();
-            } else {
-                @NotNull String name = meta.getName();
-                @NotNull String ext = name.contains(".")
-                        ? name.substring(name.lastIndexOf(".") + 1).toLowerCase()
-                        : "no-ext";
-                result.addFile(meta.getSize(), ext);
+        @NotNull String mode = command.getArg(0).toLowerCase();
+        try {
+            switch (mode) {
+                case "on" -> {
+                    core.startWatching();
+                    out().println("Watching " + Objects.requireNonNull(core.getWatcher()).getWatchedCount() + " directories for changes", Colors.GREEN);
+                }
+                case "off" -> {
+                    core.stopWatching();
+                    out().println("Stopped watching for changes", Colors.GREEN);
+                }
+                case "" -> out().println(core.getWatcher() != null
+                        ? "Watch mode is on (" + core.getWatcher().getWatchedCount() + " directories)"
+                        : "Watch mode is off");
+                default -> out().println("Usage: watch [on|off]", Colors.RED);
             }
+        } catch (IOException e) {
+            out().println("Error: watch failed: " + e.getLocalizedMessage(), Colors.RED);
         }
     }
 
-    private void searchRec(@NotNull NaryTree.Node<FileMetadata> current, @NotNull String query, boolean onlyDirs, boolean onlyFiles, @Range(from = 0, to = Integer.MAX_VALUE) int currentDepth, @Range(from = 0, to = Integer.MAX_VALUE) int maxDepth) {
-        if (currentDepth > maxDepth) return;
-
-        build.fetchChildren(current);
-        for (@NotNull NaryTree.Node<FileMetadata> child : current.getChildren()) {
-            @NotNull FileMetadata meta = child.getValue();
-            @NotNull String name = meta.getName();
-
-            if (name.toLowerCase().contains(query)) {
-                boolean matchesType = (!onlyDirs && !onlyFiles) ||
-                        (onlyDirs && meta.isDirectory()) ||
-                        (onlyFiles && !meta.isDirectory());
-
-                if (matchesType) {
-                    System.out.println(Colors.format("Found: " + meta.getAbsolutePath(), Colors.GREEN));
+    private void prefetch(@NotNull Command command) {
+        if (!FileAnalyzer.validateFlags(command, "--depth", "--concurrency")) return;
+
+        @NotNull String mode = command.getArg(0).toLowerCase();
+        switch (mode) {
+            case "on" -> {
+                int depth = intFlag(command, "--depth", 2);
+                int concurrency = intFlag(command, "--concurrency", 8);
+                if (depth < 1 || concurrency < 1) {
+                    out().println("Error: --depth and --concurrency must be positive numbers", Colors.RED);
+                    return;
                 }
+                build.enablePrefetch(depth, concurrency);
+                out().println("Prefetching " + depth + " levels ahead with " + concurrency + " threads", Colors.GREEN);
             }
-
-            if (meta.isDirectory()) {
-                searchRec(child, query, onlyDirs, onlyFiles, currentDepth + 1, maxDepth);
+            case "off" -> {
+                build.disablePrefetch();
+                out().println("Stopped prefetching", Colors.GREEN);
             }
+            case "" -> {
+                @Nullable Prefetcher prefetcher = build.getPrefetcher();
+                out().println(prefetcher != null
+                        ? "Prefetch is on (depth " + prefetcher.getDepth() + ", " + prefetcher.getConcurrency() + " threads): "
+                                + prefetcher.getPendingCount() + " pending, " + prefetcher.getUsedCount() + " used, "
+                                + prefetcher.getWastedCount() + " discarded"
+                        : "Prefetch is off");
+            }
+            default -> out().println("Usage: prefetch [on|off] [--depth N] [--concurrency N]", Colors.RED);
         }
     }
 
@@ -481,8 +1280,18 @@ public final class FileOperations {
 
         @Nullable NaryTree.Node<FileMetadata> target;
         if (path.startsWith("/")) {
-            @NotNull String rootPath = System.getProperty("user.home");
-            target = Objects.requireNonNull(build.getTree()).search(new FileMetadata(new File(rootPath)));
+            @Nullable NaryTree.Node<FileMetadata> known = build.find(path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+            if (known != null) return known;
+            target = build.getRoot();
+            if (target == null) return null;
+
+            // not loaded yet: walk down from the root what lies below it
+            @NotNull String absolute = Path.of(path).normalize().toString();
+            @NotNull String rootPath = target.getValue().getAbsolutePath();
+            @NotNull String prefix = rootPath.endsWith("/") ? rootPath : rootPath + "/";
+            if (absolute.equals(rootPath)) return target;
+            if (!absolute.startsWith(prefix)) return null;
+            path = absolute.substring(prefix.length());
         } else {
             target = core.getCurrent();
         }
@@ -494,23 +1303,13 @@ public final class FileOperations {
             @NotNull String part = parts[i];
             if (part.isEmpty() || part.equals(".")) continue;
             if (part.equals("..")) {
-                @NotNull String current = Objects.requireNonNull(target).getValue().getAbsolutePath();
-                @NotNull String parentPath = new File(current).getParent();
-
-                if (parentPath != null) {
-                    @NotNull String rootPath = System.getProperty("user.home");
-                    if (!parentPath.startsWith(rootPath)) {
-                        parentPath = rootPath;
-                    }
-
-                    target = Objects.requireNonNull(build.getTree()).search(new FileMetadata(new File(parentPath)));
-                }
+                @Nullable NaryTree.Node<FileMetadata> parent = build.getParent(Objects.requireNonNull(target));
+                target = parent != null ? parent : build.getRoot();
                 continue;
             }
 
-            build.fetchChildren(Objects.requireNonNull(target));
             @Nullable NaryTree.Node<FileMetadata> next = null;
-            for (@NotNull NaryTree.Node<FileMetadata> child : target.getChildren()) {
+            for (@NotNull NaryTree.Node<FileMetadata> child : build.listChildren(Objects.requireNonNull(target))) {
                 if (child.getValue().getName().equals(part)) {
                     next = child;
                     break;
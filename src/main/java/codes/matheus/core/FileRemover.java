@@ -0,0 +1,219 @@
+package codes.matheus.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes files and directory trees on a work-stealing pool. Each directory is one task: its
+ * subdirectories are forked, its files are unlinked as one batch while they run, and the
+ * directory itself is removed once everything below it is gone. Failures do not stop the walk;
+ * they are collected in the returned {@link Report}.
+ */
+public final class FileRemover {
+    private final int threads;
+
+    public FileRemover(int threads) {
+        this.threads = threads;
+    }
+
+    public @NotNull Report delete(@NotNull Path root) {
+        @NotNull Report report = new Report();
+        long start = System.nanoTime();
+
+        if (Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            @NotNull ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new DeleteTask(root, report));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            deleteFile(root, report);
+        }
+
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Deletes every one of {@code roots} on a single pool, as {@link #delete} does for one, and
+     * reports them together. Plain files are unlinked in batches, so deleting thousands of them
+     * costs a handful of tasks.
+     */
+    public @NotNull Report deleteAll(@NotNull List<Path> roots) {
+        @NotNull Report report = new Report();
+        long start = System.nanoTime();
+
+        @NotNull ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RootsTask(roots, report));
+        } finally {
+            pool.shutdown();
+        }
+
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private static boolean deleteFile(@NotNull Path file, @NotNull Report report) {
+        try {
+            long size = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).size();
+            Files.delete(file);
+            report.files.increment();
+            report.bytes.add(size);
+            return true;
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (IOException e) {
+            report.failed.add(file + ": " + describe(e));
+            return false;
+        }
+    }
+
+    private static @NotNull String describe(@NotNull IOException e) {
+        if (e instanceof FileSystemException fileSystemException && fileSystemException.getReason() != null) {
+            return fileSystemException.getReason();
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    // Classes
+
+    public static final class Report {
+        private final @NotNull LongAdder files = new LongAdder();
+        private final @NotNull LongAdder directories = new LongAdder();
+        private final @NotNull LongAdder bytes = new LongAdder();
+        private final @NotNull Queue<String> failed = new ConcurrentLinkedQueue<>();
+        private long elapsedNanos;
+
+        public long getFiles() {
+            return files.sum();
+        }
+
+        public long getDirectories() {
+            return directories.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        public @NotNull List<String> getFailed() {
+            return new ArrayList<>(failed);
+        }
+
+        public boolean isComplete() {
+            return failed.isEmpty();
+        }
+    }
+
+    private static final class RootsTask extends RecursiveAction {
+        private static final int BATCH = 64;
+
+        private final @NotNull List<Path> roots;
+        private final @NotNull Report report;
+
+        private RootsTask(@NotNull List<Path> roots, @NotNull Report report) {
+            this.roots = roots;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            if (roots.size() > BATCH) {
+                int middle = roots.size() / 2;
+                invokeAll(new RootsTask(roots.subList(0, middle), report), new RootsTask(roots.subList(middle, roots.size()), report));
+                return;
+            }
+
+            @NotNull List<DeleteTask> subtasks = new ArrayList<>();
+            for (@NotNull Path root : roots) {
+                if (Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+                    @NotNull DeleteTask task = new DeleteTask(root, report);
+                    task.fork();
+                    subtasks.add(task);
+                } else {
+                    deleteFile(root, report);
+                }
+            }
+            for (@NotNull DeleteTask task : subtasks) {
+                task.join();
+            }
+        }
+    }
+
+    private static final class DeleteTask extends RecursiveTask<Boolean> {
+        private final @NotNull Path directory;
+        private final @NotNull Report report;
+
+        private DeleteTask(@NotNull Path directory, @NotNull Report report) {
+            this.directory = directory;
+            this.report = report;
+        }
+
+        @Override
+        protected @NotNull Boolean compute() {
+            @NotNull List<DeleteTask> subtasks = new ArrayList<>();
+            @NotNull List<Path> files = new ArrayList<>();
+            boolean complete = true;
+
+            try (@NotNull DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (@NotNull Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        @NotNull DeleteTask task = new DeleteTask(entry, report);
+                        task.fork();
+                        subtasks.add(task);
+                    } else {
+                        files.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                report.failed.add(directory + ": " + describe(e));
+                complete = false;
+            } catch (DirectoryIteratorException e) {
+                // thrown while iterating, wrapping the IOException that stopped the listing
+                report.failed.add(directory + ": " + describe(e.getCause()));
+                complete = false;
+            }
+
+            for (@NotNull Path file : files) {
+                complete &= deleteFile(file, report);
+            }
+            for (@NotNull DeleteTask task : subtasks) {
+                complete &= task.join();
+            }
+
+            // a directory with failures below it cannot be empty; those failures are the ones to report
+            if (!complete) return false;
+            try {
+                Files.delete(directory);
+                report.directories.increment();
+                return true;
+            } catch (IOException e) {
+                report.failed.add(directory + ": " + describe(e));
+                return false;
+            }
+        }
+    }
+}
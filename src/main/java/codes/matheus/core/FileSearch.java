@@ -0,0 +1,182 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import codes.matheus.util.Colors;
+import codes.matheus.util.OutputSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parallel name search over a {@link BuildTree} subtree. Each directory is one fork/join task;
+ * matches are streamed to an {@link OutputSink} as they are found and the walk stops as soon as
+ * the requested number of matches has been reached.
+ */
+public final class FileSearch {
+
+    // static initializers
+
+    /**
+     * Case-insensitive substring match, compared in place without lower-casing every name.
+     */
+    public static @NotNull NameMatcher substring(@NotNull String query) {
+        @NotNull String needle = query.toLowerCase();
+        return name -> {
+            int max = name.length() - needle.length();
+            for (int i = 0; i <= max; i++) {
+                if (name.regionMatches(true, i, needle, 0, needle.length())) return true;
+            }
+            return false;
+        };
+    }
+
+    public static @NotNull NameMatcher glob(@NotNull String glob) throws PatternSyntaxException {
+        return regex("^" + globToRegex(glob) + "$");
+    }
+
+    public static @NotNull NameMatcher regex(@NotNull String regex) throws PatternSyntaxException {
+        @NotNull Pattern pattern = Pattern.compile(regex);
+        return name -> pattern.matcher(name).find();
+    }
+
+    private static @NotNull String globToRegex(@NotNull String glob) {
+        @NotNull StringBuilder regex = new StringBuilder(glob.length() * 2);
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                // an escaped character is literal; a backslash before a letter or digit would make
+                // it a regex class like \d, while before anything else it always means the character
+                char escaped = glob.charAt(++i);
+                if (!Character.isLetterOrDigit(escaped)) regex.append('\\');
+                regex.append(escaped);
+                continue;
+            }
+            if (inClass) {
+                if (c == ']') inClass = false;
+                if (c == '\\') regex.append('\\');
+                regex.append(c);
+                continue;
+            }
+
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                case '[' -> {
+                    inClass = true;
+                    regex.append('[');
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '!') {
+                        regex.append('^');
+                        i++;
+                    }
+                }
+                default -> {
+                    if ("\\.^$|+(){}".indexOf(c) >= 0) regex.append('\\');
+                    regex.append(c);
+                }
+            }
+        }
+        return regex.toString();
+    }
+
+    // Objects
+
+    private final @NotNull BuildTree build;
+
+    public FileSearch(@NotNull BuildTree build) {
+        this.build = build;
+    }
+
+    /**
+     * Searches below {@code root} and writes every match to {@code sink}.
+     *
+     * @return the number of matches written
+     */
+    public long search(@NotNull NaryTree.Node<FileMetadata> root, @NotNull Options options, @NotNull OutputSink sink) {
+        @NotNull ForkJoinPool pool = new ForkJoinPool(options.threads);
+        @NotNull AtomicLong found = new AtomicLong();
+        try {
+            pool.invoke(new SearchTask(root, 0, options, sink, found));
+        } finally {
+            pool.shutdown();
+        }
+        return Math.min(found.get(), options.limit);
+    }
+
+    // Classes
+
+    @FunctionalInterface
+    public interface NameMatcher {
+        boolean matches(@NotNull String name);
+    }
+
+    public static final class Options {
+        private final @NotNull NameMatcher matcher;
+        private final boolean onlyDirs;
+        private final boolean onlyFiles;
+        private final int maxDepth;
+        private final long limit;
+        private final int threads;
+
+        public Options(@NotNull NameMatcher matcher, boolean onlyDirs, boolean onlyFiles, int maxDepth, long limit, int threads) {
+            this.matcher = matcher;
+            this.onlyDirs = onlyDirs;
+            this.onlyFiles = onlyFiles;
+            this.maxDepth = maxDepth;
+            this.limit = limit;
+            this.threads = threads;
+        }
+    }
+
+    private final class SearchTask extends RecursiveAction {
+        private final @NotNull NaryTree.Node<FileMetadata> node;
+        private final int depth;
+        private final @NotNull Options options;
+        private final @NotNull OutputSink sink;
+        private final @NotNull AtomicLong found;
+
+        private SearchTask(@NotNull NaryTree.Node<FileMetadata> node, int depth, @NotNull Options options, @NotNull OutputSink sink, @NotNull AtomicLong found) {
+            this.node = node;
+            this.depth = depth;
+            this.options = options;
+            this.sink = sink;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (depth > options.maxDepth || found.get() >= options.limit) return;
+
+            @NotNull List<SearchTask> subtasks = new ArrayList<>();
+            for (@NotNull NaryTree.Node<FileMetadata> child : build.listChildren(node)) {
+                if (found.get() >= options.limit) break;
+                @NotNull FileMetadata meta = child.getValue();
+
+                boolean matchesType = (!options.onlyDirs && !options.onlyFiles) ||
+                        (options.onlyDirs && meta.isDirectory()) ||
+                        (options.onlyFiles && !meta.isDirectory());
+
+                if (matchesType && options.matcher.matches(meta.getName())
+                        && found.incrementAndGet() <= options.limit) {
+                    sink.println("Found: ", meta.getAbsolutePath(), Colors.GREEN);
+                }
+
+                if (meta.isDirectory() && !meta.isSymbolicLink()) {
+                    @NotNull SearchTask task = new SearchTask(child, depth + 1, options, sink, found);
+                    task.fork();
+                    subtasks.add(task);
+                }
+            }
+
+            for (@NotNull SearchTask task : subtasks) {
+                task.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package codes.matheus.core;
+
+import codes.matheus.util.Metrics;
+import codes.matheus.util.OutputSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams byte ranges of a file to stdout without decoding them. Ranges are copied with
+ * {@link FileChannel#transferTo}, and line-based ranges are located by scanning memory-mapped
+ * windows from the nearest end of the file, so only the bytes actually shown are ever touched.
+ */
+public final class FileStreamer {
+    private static final long WINDOW = 1L << 24;
+    // a FileChannel, so transferTo can hand the copy to the kernel (sendfile) instead of a buffer
+    private static final @NotNull FileChannel STDOUT = new FileOutputStream(FileDescriptor.out).getChannel();
+
+    private final @NotNull Path path;
+
+    public FileStreamer(@NotNull Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Writes the whole file.
+     *
+     * @return the last byte written, or {@code -1} if nothing was written
+     */
+    public int all() throws IOException {
+        try (@NotNull FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return transfer(channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Writes the first {@code lines} lines.
+     */
+    public int head(long lines) throws IOException {
+        try (@NotNull FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long end = 0;
+            long remaining = lines;
+
+            while (end < size && remaining > 0) {
+                long length = Math.min(WINDOW, size - end);
+                @NotNull MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, end, length);
+                int i = 0;
+                while (i < length && remaining > 0) {
+                    if (window.get(i++) == '\n') remaining--;
+                }
+                end += i;
+            }
+            return transfer(channel, 0, end);
+        }
+    }
+
+    /**
+     * Writes the last {@code lines} lines. A trailing newline does not count as an empty line.
+     */
+    public int tail(long lines) throws IOException {
+        try (@NotNull FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = size;
+            long remaining = lines;
+
+            while (start > 0 && remaining > 0) {
+                long length = Math.min(WINDOW, start);
+                long base = start - length;
+                @NotNull MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+                int i = (int) length - 1;
+                for (; i >= 0; i--) {
+                    if (window.get(i) == '\n' && base + i != size - 1 && --remaining == 0) break;
+                }
+                start = i >= 0 ? base + i + 1 : base;
+            }
+            return transfer(channel, start, size);
+        }
+    }
+
+    /**
+     * Writes bytes {@code [start, end)}; {@code end} is clamped to the file size.
+     */
+    public int range(long start, long end) throws IOException {
+        try (@NotNull FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return transfer(channel, Math.min(start, size), Math.min(end, size));
+        }
+    }
+
+    /**
+     * Writes bytes {@code [start, end)}, or fewer if the file shrinks meanwhile, and returns the
+     * last byte written as an unsigned value, or {@code -1} if nothing was written.
+     */
+    private static int transfer(@NotNull FileChannel channel, long start, long end) throws IOException {
+        OutputSink.current().flush();
+        long position = start;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, STDOUT);
+            // nothing left to send at position: the file was truncated or rotated under us
+            if (transferred <= 0 && position >= channel.size()) break;
+            position += transferred;
+        }
+        Metrics.Counter.BYTES_READ.add(Math.max(0, position - start));
+        if (position <= start) return -1;
+
+        @NotNull ByteBuffer last = ByteBuffer.allocate(1);
+        if (channel.read(last, position - 1) < 1) return 0;
+        return last.get(0) & 0xFF;
+    }
+}
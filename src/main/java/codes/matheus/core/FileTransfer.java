@@ -0,0 +1,383 @@
+package codes.matheus.core;
+
+import codes.matheus.util.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves and copies files and directory trees. Moves are attempted as a single atomic rename
+ * first; across file systems they fall back to a parallel copy followed by a delete of the source.
+ * File contents are copied with {@link FileChannel#transferTo}, which lets the kernel copy the
+ * data without passing it through the heap.
+ */
+public final class FileTransfer {
+    /**
+     * Files of more than two ranges are copied as several ranges of this size at once.
+     */
+    private static final long RANGE = 32L << 20;
+    private static final int FILES_PER_TASK = 16;
+
+    private final int threads;
+
+    public FileTransfer(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Moves {@code source} to {@code target}, which must not exist yet. An existing target is never
+     * replaced, even if it appears while moving: the name is claimed first by creating an empty
+     * file or directory there, which fails if anything holds it, and the rename then only replaces
+     * that placeholder.
+     *
+     * @throws java.nio.file.FileAlreadyExistsException if {@code target} exists
+     */
+    public @NotNull Result move(@NotNull Path source, @NotNull Path target, @NotNull Progress progress) throws IOException {
+        if (Files.isDirectory(source, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectory(target);
+        } else {
+            Files.createFile(target);
+        }
+
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return new Result(true, 0, 0, null);
+        } catch (AtomicMoveNotSupportedException e) {
+            // different file system: copy, then remove the source
+            Files.delete(target);
+        } catch (IOException e) {
+            release(target, e);
+            throw e;
+        }
+
+        @NotNull Result copied = copy(source, target, progress);
+        @NotNull FileRemover.Report removed = new FileRemover(threads).delete(source);
+        if (!removed.isComplete()) {
+            throw new IOException("copied to " + target + " but could not remove " + removed.getFailed().size()
+                    + " source entries, first: " + removed.getFailed().get(0));
+        }
+        return copied;
+    }
+
+    /**
+     * Copies {@code source} (a file or a whole directory tree) to {@code target}, which must not
+     * exist yet, keeping the permissions (on POSIX file systems) and the times of everything
+     * copied. Runs in three steps on one pool: the directory skeleton is created with one task
+     * per directory, then all files are copied concurrently, large ones as several byte ranges at
+     * once, and finally the directories get their permissions and times. Directories come last so
+     * that filling them neither changes their times again nor fails on read-only ones.
+     */
+    public @NotNull Result copy(@NotNull Path source, @NotNull Path target, @NotNull Progress progress) throws IOException {
+        @NotNull Counters counters = new Counters(progress);
+        @NotNull Queue<Job> files = new ConcurrentLinkedQueue<>();
+        @NotNull Queue<Job> directories = new ConcurrentLinkedQueue<>();
+
+        @NotNull BasicFileAttributes attributes = attributes(source);
+        @NotNull Copied root = new Copied(metadata(target, attributes));
+
+        @NotNull ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            if (attributes.isDirectory()) {
+                pool.invoke(new SkeletonTask(new Job(source, target, attributes, root), files, directories));
+            } else {
+                files.add(new Job(source, target, attributes, root));
+            }
+            pool.invoke(new FilesTask(new ArrayList<>(files), counters));
+            for (@NotNull Job directory : directories) {
+                preserve(directory.target, directory.attributes);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        return new Result(false, counters.files.get(), counters.bytes.get(), root);
+    }
+
+    private static void release(@NotNull Path placeholder, @NotNull IOException cause) {
+        try {
+            Files.deleteIfExists(placeholder);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static @NotNull BasicFileAttributes attributes(@NotNull Path path) throws IOException {
+        Metrics.Counter.STAT_CALLS.increment();
+        try {
+            return Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    /**
+     * The metadata {@code target} has once it is a copy with {@code attributes}, known without
+     * reading it back.
+     */
+    private static @NotNull FileMetadata metadata(@NotNull Path target, @NotNull BasicFileAttributes attributes) {
+        @Nullable Path name = target.getFileName();
+        return new FileMetadata(name != null ? name.toString() : "", target.toAbsolutePath().toString(), attributes.isDirectory(),
+                false, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+    }
+
+    private static void preserve(@NotNull Path target, @NotNull BasicFileAttributes attributes) throws IOException {
+        if (attributes instanceof PosixFileAttributes posix) {
+            Files.setPosixFilePermissions(target, posix.permissions());
+        }
+        Files.getFileAttributeView(target, BasicFileAttributeView.class)
+                .setTimes(attributes.lastModifiedTime(), attributes.lastAccessTime(), null);
+    }
+
+    private static void copyFile(@NotNull Job job, @NotNull Counters counters) throws IOException {
+        if (job.attributes.isSymbolicLink()) {
+            Files.createSymbolicLink(job.target, Files.readSymbolicLink(job.source));
+            job.copied.metadata = FileMetadata.of(job.target);
+            counters.copied(0);
+            return;
+        }
+
+        long size = job.attributes.size();
+        if (size <= 2 * RANGE) {
+            try (@NotNull FileChannel in = FileChannel.open(job.source, StandardOpenOption.READ);
+                 @NotNull FileChannel out = FileChannel.open(job.target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                transfer(in, out, 0, in.size());
+            }
+        } else {
+            FileChannel.open(job.target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+            @NotNull List<RangeTask> ranges = new ArrayList<>();
+            for (long start = 0; start < size; start += RANGE) {
+                ranges.add(new RangeTask(job, start, Math.min(size, start + RANGE)));
+            }
+            ForkJoinTask.invokeAll(ranges);
+        }
+        preserve(job.target, job.attributes);
+        counters.copied(size);
+    }
+
+    private static void transfer(@NotNull FileChannel in, @NotNull FileChannel out, long start, long end) throws IOException {
+        out.position(start);
+        long position = start;
+        while (position < end) {
+            long transferred = in.transferTo(position, end - position, out);
+            if (transferred <= 0 && position >= in.size()) break;
+            position += transferred;
+        }
+        Metrics.Counter.BYTES_READ.add(position - start);
+    }
+
+    // Classes
+
+    @FunctionalInterface
+    public interface Progress {
+        void update(long files, long bytes);
+    }
+
+    public static final class Result {
+        private final boolean atomic;
+        private final long files;
+        private final long bytes;
+        private final @Nullable Copied copied;
+
+        private Result(boolean atomic, long files, long bytes, @Nullable Copied copied) {
+            this.atomic = atomic;
+            this.files = files;
+            this.bytes = bytes;
+            this.copied = copied;
+        }
+
+        /**
+         * Whether the move was a single rename, in which case nothing was copied.
+         */
+        public boolean isAtomic() {
+            return atomic;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * What was created, or {@code null} if the move was a single rename.
+         */
+        public @Nullable Copied getCopied() {
+            return copied;
+        }
+    }
+
+    /**
+     * One entry created by a copy, with its metadata as copied and, for a directory, everything
+     * created inside it.
+     */
+    public static final class Copied {
+        private @NotNull FileMetadata metadata;
+        private final @NotNull List<Copied> children = new ArrayList<>();
+
+        private Copied(@NotNull FileMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        public @NotNull FileMetadata getMetadata() {
+            return metadata;
+        }
+
+        public @NotNull List<Copied> getChildren() {
+            return children;
+        }
+    }
+
+    private static final class Counters {
+        private final @NotNull AtomicLong files = new AtomicLong();
+        private final @NotNull AtomicLong bytes = new AtomicLong();
+        private final @NotNull Progress progress;
+
+        private Counters(@NotNull Progress progress) {
+            this.progress = progress;
+        }
+
+        private void copied(long size) {
+            progress.update(files.incrementAndGet(), bytes.addAndGet(size));
+        }
+    }
+
+    private static final class Job {
+        private final @NotNull Path source;
+        private final @NotNull Path target;
+        private final @NotNull BasicFileAttributes attributes;
+        private final @NotNull Copied copied;
+
+        private Job(@NotNull Path source, @NotNull Path target, @NotNull BasicFileAttributes attributes, @NotNull Copied copied) {
+            this.source = source;
+            this.target = target;
+            this.attributes = attributes;
+            this.copied = copied;
+        }
+    }
+
+    /**
+     * Creates one directory of the copy, records its files for the next step and forks a task for
+     * each subdirectory.
+     */
+    private static final class SkeletonTask extends RecursiveAction {
+        private final @NotNull Job directory;
+        private final @NotNull Queue<Job> files;
+        private final @NotNull Queue<Job> directories;
+
+        private SkeletonTask(@NotNull Job directory, @NotNull Queue<Job> files, @NotNull Queue<Job> directories) {
+            this.directory = directory;
+            this.files = files;
+            this.directories = directories;
+        }
+
+        @Override
+        protected void compute() {
+            @NotNull List<SkeletonTask> subtasks = new ArrayList<>();
+            try {
+                Files.createDirectory(directory.target);
+                try (@NotNull DirectoryStream<Path> entries = Files.newDirectoryStream(directory.source)) {
+                    for (@NotNull Path entry : entries) {
+                        @NotNull Path destination = directory.target.resolve(entry.getFileName().toString());
+                        @NotNull BasicFileAttributes attributes = attributes(entry);
+                        @NotNull Copied copied = new Copied(metadata(destination, attributes));
+                        directory.copied.children.add(copied);
+
+                        @NotNull Job job = new Job(entry, destination, attributes, copied);
+                        if (attributes.isDirectory()) {
+                            @NotNull SkeletonTask task = new SkeletonTask(job, files, directories);
+                            task.fork();
+                            subtasks.add(task);
+                        } else {
+                            files.add(job);
+                        }
+                    }
+                }
+                directories.add(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                for (@NotNull SkeletonTask task : subtasks) {
+                    task.join();
+                }
+            }
+        }
+    }
+
+    private static final class FilesTask extends RecursiveAction {
+        private final @NotNull List<Job> jobs;
+        private final @NotNull Counters counters;
+
+        private FilesTask(@NotNull List<Job> jobs, @NotNull Counters counters) {
+            this.jobs = jobs;
+            this.counters = counters;
+        }
+
+        @Override
+        protected void compute() {
+            if (jobs.size() > FILES_PER_TASK) {
+                int middle = jobs.size() / 2;
+                invokeAll(new FilesTask(jobs.subList(0, middle), counters), new FilesTask(jobs.subList(middle, jobs.size()), counters));
+                return;
+            }
+
+            try {
+                for (@NotNull Job job : jobs) {
+                    copyFile(job, counters);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Copies bytes {@code [start, end)} of a large file through channels of its own, so ranges of
+     * the same file are copied in parallel.
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private final @NotNull Job job;
+        private final long start;
+        private final long end;
+
+        private RangeTask(@NotNull Job job, long start, long end) {
+            this.job = job;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            try (@NotNull FileChannel in = FileChannel.open(job.source, StandardOpenOption.READ);
+                 @NotNull FileChannel out = FileChannel.open(job.target, StandardOpenOption.WRITE)) {
+                transfer(in, out, start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
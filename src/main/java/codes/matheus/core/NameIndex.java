@@ -0,0 +1,193 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trigram index over the names of every loaded node, answering substring queries without walking
+ * the tree.
+ * <p>
+ * Each node gets an increasing id; every lower-cased trigram of its name maps to a posting list of
+ * ids stored as delta-encoded varints. A query intersects the posting lists of its own trigrams and
+ * then checks the few remaining candidates against the real name. Removed nodes leave a hole in the
+ * id table that queries skip; the index is rebuilt once holes outnumber live entries.
+ */
+public final class NameIndex implements BuildTree.Listener {
+    private final @NotNull List<NaryTree.Node<FileMetadata>> nodes = new ArrayList<>();
+    private final @NotNull Map<String, Integer> ids = new HashMap<>();
+    private final @NotNull Map<Long, PostingList> postings = new HashMap<>();
+    private int removed;
+
+    public NameIndex() {
+    }
+
+    public synchronized void addAll(@NotNull Collection<NaryTree.Node<FileMetadata>> loaded) {
+        for (@NotNull NaryTree.Node<FileMetadata> node : loaded) {
+            add(node);
+        }
+    }
+
+    public synchronized int size() {
+        return nodes.size() - removed;
+    }
+
+    @Override
+    public synchronized void onInserted(@NotNull NaryTree.Node<FileMetadata> node) {
+        add(node);
+    }
+
+    @Override
+    public synchronized void onRemoved(@NotNull NaryTree.Node<FileMetadata> node) {
+        @Nullable Integer id = ids.remove(node.getValue().getAbsolutePath());
+        if (id == null) return;
+
+        nodes.set(id, null);
+        removed++;
+        if (removed > 1024 && removed > nodes.size() / 2) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Returns every indexed node whose name contains {@code query}, ignoring case.
+     */
+    public synchronized @NotNull List<NaryTree.Node<FileMetadata>> search(@NotNull String query) {
+        @NotNull FileSearch.NameMatcher matcher = FileSearch.substring(query);
+        @NotNull List<NaryTree.Node<FileMetadata>> result = new ArrayList<>();
+
+        if (query.length() < 3) {
+            for (@Nullable NaryTree.Node<FileMetadata> node : nodes) {
+                if (node != null && matcher.matches(node.getValue().getName())) result.add(node);
+            }
+            return result;
+        }
+
+        @NotNull String needle = query.toLowerCase();
+        @NotNull List<PostingList> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            @Nullable PostingList list = postings.get(trigram(needle, i));
+            if (list == null) return result;
+            if (!lists.contains(list)) lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.count));
+
+        @NotNull int[] candidates = lists.get(0).decode();
+        int length = candidates.length;
+        for (int i = 1; i < lists.size() && length > 0; i++) {
+            length = intersect(candidates, length, lists.get(i).decode());
+        }
+
+        for (int i = 0; i < length; i++) {
+            @Nullable NaryTree.Node<FileMetadata> node = nodes.get(candidates[i]);
+            if (node != null && matcher.matches(node.getValue().getName())) result.add(node);
+        }
+        return result;
+    }
+
+    private void add(@NotNull NaryTree.Node<FileMetadata> node) {
+        @NotNull String path = node.getValue().getAbsolutePath();
+        if (ids.containsKey(path)) return;
+
+        int id = nodes.size();
+        nodes.add(node);
+        ids.put(path, id);
+
+        @NotNull String name = node.getValue().getName().toLowerCase();
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            postings.computeIfAbsent(trigram(name, i), key -> new PostingList()).add(id);
+        }
+    }
+
+    private void rebuild() {
+        @NotNull List<NaryTree.Node<FileMetadata>> live = new ArrayList<>(nodes.size() - removed);
+        for (@Nullable NaryTree.Node<FileMetadata> node : nodes) {
+            if (node != null) live.add(node);
+        }
+
+        nodes.clear();
+        ids.clear();
+        postings.clear();
+        removed = 0;
+        for (@NotNull NaryTree.Node<FileMetadata> node : live) {
+            add(node);
+        }
+    }
+
+    private static long trigram(@NotNull String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    /**
+     * Keeps the ids of {@code into} (the first {@code length} entries) that also appear in
+     * {@code other}. Both are sorted ascending.
+     *
+     * @return the new length of {@code into}
+     */
+    private static int intersect(@NotNull int[] into, int length, @NotNull int[] other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < length && j < other.length; i++) {
+            while (j < other.length && other[j] < into[i]) j++;
+            if (j < other.length && other[j] == into[i]) {
+                into[kept++] = into[i];
+            }
+        }
+        return kept;
+    }
+
+    // Classes
+
+    /**
+     * Ascending ids stored as varint-encoded gaps.
+     */
+    private static final class PostingList {
+        private @NotNull byte[] data = new byte[8];
+        private int size;
+        private int count;
+        private int last = -1;
+
+        private void add(int id) {
+            if (id == last) return;
+
+            int gap = id - last;
+            last = id;
+            count++;
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((gap & ~0x7F) != 0) {
+                data[size++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            data[size++] = (byte) gap;
+        }
+
+        private @NotNull int[] decode() {
+            @NotNull int[] out = new int[count];
+            int id = -1;
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                id += gap;
+                out[i] = id;
+            }
+            return out;
+        }
+    }
+}
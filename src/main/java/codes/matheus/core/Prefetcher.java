@@ -0,0 +1,207 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lists directories speculatively before they are asked for. Whenever {@link BuildTree} applies a
+ * listing, the subdirectories it contains are listed on a small pool of daemon threads, and those
+ * listings in turn schedule their own subdirectories until {@code depth} levels below the
+ * expanded directory are covered.
+ * <p>
+ * Prefetched listings are only held here; the tree itself is still changed exclusively by
+ * {@link BuildTree#fetchChildren}, which takes the pending listing for a directory (waiting for it
+ * if it is being read) instead of listing the directory again, provided the directory has not
+ * changed since. A listing still queued behind others is claimed and read by the caller itself. At most {@value #MAX_PENDING} listings are held; scheduling more drops the
+ * oldest ones.
+ */
+public final class Prefetcher {
+    private static final int MAX_PENDING = 16_384;
+
+    private final int depth;
+    private final int concurrency;
+    private final @NotNull ExecutorService pool;
+    private final @NotNull LongAdder used = new LongAdder();
+    private final @NotNull LongAdder wasted = new LongAdder();
+    // in scheduling order; guarded by itself
+    private final @NotNull Map<String, Pending> pending = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(@NotNull Map.Entry<String, Pending> eldest) {
+            if (size() <= MAX_PENDING) return false;
+            eldest.getValue().future.cancel(false);
+            wasted.increment();
+            return true;
+        }
+    };
+
+    Prefetcher(int depth, int concurrency) {
+        this.depth = depth;
+        this.concurrency = concurrency;
+
+        @NotNull AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(concurrency, runnable -> {
+            @NotNull Thread thread = new Thread(runnable, "tree-prefetch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Getters
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Prefetched listings that a later fetch used instead of listing the directory itself.
+     */
+    public long getUsedCount() {
+        return used.sum();
+    }
+
+    /**
+     * Prefetched listings thrown away because the directory changed or was invalidated first, or
+     * because too many were pending.
+     */
+    public long getWastedCount() {
+        return wasted.sum();
+    }
+
+    // Used by BuildTree
+
+    /**
+     * Removes and returns the prefetched listing of {@code absolutePath}, waiting for it if it is
+     * being read. Returns {@code null} if none was scheduled, it has not started yet (the caller
+     * is then faster listing the directory itself than waiting behind the queue), the listing
+     * failed, or it was read before the directory's modification time became {@code modified}.
+     */
+    @Nullable BuildTree.Listing take(@NotNull String absolutePath, long modified) {
+        @Nullable Pending task;
+        synchronized (pending) {
+            task = pending.remove(absolutePath);
+        }
+        if (task == null || task.claim()) return null;
+
+        try {
+            @Nullable BuildTree.Listing listing = task.future.join();
+            if (listing == null) return null;
+            if (listing.getModified() != modified) {
+                wasted.increment();
+                return null;
+            }
+            used.increment();
+            return listing;
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Drops the prefetched listing of {@code absolutePath}, which is out of date.
+     */
+    void discard(@NotNull String absolutePath) {
+        @Nullable Pending task;
+        synchronized (pending) {
+            task = pending.remove(absolutePath);
+        }
+        if (task != null) {
+            task.future.cancel(false);
+            wasted.increment();
+        }
+    }
+
+    /**
+     * Called once a listing of {@code directory} has been applied: schedules its subdirectories.
+     */
+    void expanded(@NotNull BuildTree build, @NotNull NaryTree.Node<FileMetadata> directory) {
+        for (@NotNull NaryTree.Node<FileMetadata> child : directory.getChildren()) {
+            @NotNull FileMetadata meta = child.getValue();
+            if (meta.isDirectory() && !meta.isSymbolicLink() && build.getListedAt(child) == null) {
+                schedule(meta.getAbsolutePath(), depth);
+            }
+        }
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+        synchronized (pending) {
+            for (@NotNull Pending task : pending.values()) {
+                task.future.cancel(false);
+            }
+            pending.clear();
+        }
+    }
+
+    private void schedule(@NotNull String absolutePath, int levels) {
+        if (levels <= 0) return;
+
+        @NotNull Pending task = new Pending();
+        synchronized (pending) {
+            if (pending.putIfAbsent(absolutePath, task) != null) return;
+        }
+
+        try {
+            pool.execute(() -> {
+                if (task.future.isDone() || !task.claim()) return;
+                @Nullable BuildTree.Listing listing = null;
+                try {
+                    listing = BuildTree.readListing(Path.of(absolutePath));
+                } finally {
+                    task.future.complete(listing);
+                }
+
+                if (listing != null && levels > 1) {
+                    for (@NotNull FileMetadata meta : listing.getEntries()) {
+                        if (meta.isDirectory() && !meta.isSymbolicLink()) {
+                            schedule(meta.getAbsolutePath(), levels - 1);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down: nobody should wait on a listing that will never run
+            synchronized (pending) {
+                pending.remove(absolutePath, task);
+            }
+            task.future.complete(null);
+        }
+    }
+
+    // Classes
+
+    /**
+     * A scheduled listing. Whoever claims it first reads the directory: a pool thread that gets to
+     * it, or a fetch that needs it before then.
+     */
+    private static final class Pending {
+        private final @NotNull CompletableFuture<BuildTree.Listing> future = new CompletableFuture<>();
+        private final @NotNull AtomicBoolean claimed = new AtomicBoolean();
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
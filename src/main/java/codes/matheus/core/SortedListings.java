@@ -0,0 +1,146 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sorted views of directory listings for {@code ls}, cached per directory so listing a huge
+ * directory again, or paging through it, does not sort it again. A directory's views are dropped
+ * as soon as a child is inserted, removed or updated, and only the most recently used directories
+ * are kept.
+ */
+public final class SortedListings implements BuildTree.Listener {
+    private static final int MAX_DIRECTORIES = 64;
+
+    private final @NotNull BuildTree build;
+    private final @NotNull Map<String, Views> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(@NotNull Map.Entry<String, Views> eldest) {
+            return size() > MAX_DIRECTORIES;
+        }
+    };
+
+    public SortedListings(@NotNull BuildTree build) {
+        this.build = build;
+        build.addListener(this);
+    }
+
+    /**
+     * Returns the entries of {@code directory} in {@code sort} order, hidden entries included if
+     * {@code all} is set. The directory must have been fetched.
+     */
+    public @NotNull List<FileMetadata> get(@NotNull NaryTree.Node<FileMetadata> directory, @NotNull Sort sort, boolean all) {
+        @NotNull String path = directory.getValue().getAbsolutePath();
+        @Nullable List<FileMetadata> hidden = all ? build.getHiddenEntries(directory) : null;
+        int slot = sort.ordinal() * 2 + (all ? 1 : 0);
+
+        @Nullable Views views;
+        synchronized (cache) {
+            views = cache.get(path);
+            if (views == null || (all && views.hidden != hidden)) {
+                views = new Views(all ? hidden : views != null ? views.hidden : null);
+                cache.put(path, views);
+            }
+            if (views.sorted[slot] != null) {
+                return views.sorted[slot];
+            }
+        }
+
+        // sorted outside the lock; a listing racing with a change is dropped again by the listener
+        @NotNull List<FileMetadata> sorted = sort(directory, hidden, sort);
+        synchronized (cache) {
+            views.sorted[slot] = sorted;
+        }
+        return sorted;
+    }
+
+    private static @NotNull List<FileMetadata> sort(@NotNull NaryTree.Node<FileMetadata> directory, @Nullable List<FileMetadata> hidden, @NotNull Sort sort) {
+        @NotNull FileMetadata[] entries;
+        synchronized (directory) {
+            @NotNull List<NaryTree.Node<FileMetadata>> children = directory.getChildren();
+            int extra = hidden != null ? hidden.size() : 0;
+            entries = new FileMetadata[children.size() + extra];
+            for (int i = 0; i < children.size(); i++) {
+                entries[i] = children.get(i).getValue();
+            }
+            for (int i = 0; i < extra; i++) {
+                entries[children.size() + i] = hidden.get(i);
+            }
+        }
+        Arrays.sort(entries, sort.comparator);
+        return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    @Override
+    public void onInserted(@NotNull NaryTree.Node<FileMetadata> node) {
+        dropParentOf(node);
+    }
+
+    @Override
+    public void onRemoved(@NotNull NaryTree.Node<FileMetadata> node) {
+        dropParentOf(node);
+    }
+
+    @Override
+    public void onUpdated(@NotNull NaryTree.Node<FileMetadata> node) {
+        dropParentOf(node);
+    }
+
+    private void dropParentOf(@NotNull NaryTree.Node<FileMetadata> node) {
+        synchronized (cache) {
+            if (cache.isEmpty()) return;
+            @NotNull String path = node.getValue().getAbsolutePath();
+            int separator = path.lastIndexOf(File.separatorChar);
+            if (separator > 0) {
+                cache.remove(path.substring(0, separator));
+            } else if (separator == 0) {
+                cache.remove(File.separator);
+            }
+        }
+    }
+
+    // Classes
+
+    public enum Sort {
+        NAME(Comparator.comparing(FileMetadata::getName, String.CASE_INSENSITIVE_ORDER)),
+        SIZE(Comparator.comparingLong(FileMetadata::getSize).reversed()),
+        MTIME(Comparator.comparingLong(FileMetadata::getModifiedNanos).reversed());
+
+        private final @NotNull Comparator<FileMetadata> comparator;
+
+        Sort(@NotNull Comparator<FileMetadata> comparator) {
+            this.comparator = comparator.thenComparing(FileMetadata::getName);
+        }
+
+        /**
+         * Returns the order named {@code name}, or {@code null} if there is none.
+         */
+        public static @Nullable Sort of(@NotNull String name) {
+            for (@NotNull Sort sort : values()) {
+                if (sort.name().equals(name.toUpperCase(Locale.ROOT))) return sort;
+            }
+            return null;
+        }
+    }
+
+    private static final class Views {
+        // the hidden entries the "all" views were built from
+        private final @Nullable List<FileMetadata> hidden;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final @Nullable List<FileMetadata> @NotNull [] sorted = new List[Sort.values().length * 2];
+
+        private Views(@Nullable List<FileMetadata> hidden) {
+            this.hidden = hidden;
+        }
+    }
+}
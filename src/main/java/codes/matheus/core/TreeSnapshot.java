@@ -0,0 +1,189 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import codes.matheus.util.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Binary image of the expanded part of a {@link BuildTree}, so a session can start warm.
+ * <p>
+ * The file holds a header (magic, version, root path), one record per node in pre-order and a
+ * trailing node count. A record is the parent index, flags, size, modification time, the listing
+ * time of listed directories and the length-prefixed UTF-8 name. A parent always precedes its
+ * children, so the tree is rebuilt in one pass over a memory-mapped file. Restored directories
+ * keep the listing time they had when saved and are revalidated by
+ * {@link BuildTree#fetchChildren} on first use.
+ */
+public final class TreeSnapshot {
+    private static final int MAGIC = 0x4A465354; // "JFST"
+    private static final int VERSION = 1;
+
+    private static final byte FLAG_DIRECTORY = 1;
+    private static final byte FLAG_SYMBOLIC_LINK = 1 << 1;
+    private static final byte FLAG_LISTED = 1 << 2;
+
+    // parent index, flags, size, modification time and name length
+    private static final int MIN_RECORD = Integer.BYTES + 1 + 2 * Long.BYTES + Short.BYTES;
+
+    private final @NotNull Path file;
+
+    public TreeSnapshot(@NotNull Path file) {
+        this.file = file;
+    }
+
+    public @NotNull Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes every loaded node of {@code build} to the snapshot file, replacing it atomically.
+     *
+     * @return the number of nodes written
+     */
+    public int save(@NotNull BuildTree build) throws IOException {
+        @Nullable NaryTree.Node<FileMetadata> root = build.getRoot();
+        if (root == null) return 0;
+
+        @Nullable Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        @NotNull Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try (@NotNull DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeName(out, root.getValue().getAbsolutePath());
+
+            @NotNull Deque<NaryTree.Node<FileMetadata>> stack = new ArrayDeque<>();
+            @NotNull Deque<Integer> parents = new ArrayDeque<>();
+            stack.push(root);
+            parents.push(-1);
+
+            while (!stack.isEmpty()) {
+                @NotNull NaryTree.Node<FileMetadata> node = stack.pop();
+                int parentIndex = parents.pop();
+                @NotNull FileMetadata meta = node.getValue();
+                @Nullable Long listedAt = meta.isDirectory() ? build.getListedAt(node) : null;
+
+                byte flags = 0;
+                if (meta.isDirectory()) flags |= FLAG_DIRECTORY;
+                if (meta.isSymbolicLink()) flags |= FLAG_SYMBOLIC_LINK;
+                if (listedAt != null) flags |= FLAG_LISTED;
+
+                out.writeInt(parentIndex);
+                out.writeByte(flags);
+                out.writeLong(meta.getSize());
+                out.writeLong(meta.getModifiedNanos());
+                if (listedAt != null) {
+                    out.writeLong(listedAt);
+                }
+                writeName(out, parentIndex < 0 ? "" : meta.getName());
+
+                @NotNull List<NaryTree.Node<FileMetadata>> children = node.getChildren();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    stack.push(children.get(i));
+                    parents.push(count);
+                }
+                count++;
+            }
+            out.writeInt(count);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Rebuilds {@code build} from the snapshot if one exists for {@code rootPath}.
+     *
+     * @return {@code false} when there is no usable snapshot, including a damaged one; the tree
+     * must then be loaded from disk
+     */
+    public boolean restore(@NotNull BuildTree build, @NotNull String rootPath) {
+        if (!Files.isRegularFile(file)) return false;
+
+        try (@NotNull FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return false;
+
+            @NotNull MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Metrics.Counter.BYTES_READ.add(channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return false;
+
+            @NotNull byte[] scratch = new byte[256];
+            @NotNull String savedRoot = readName(buffer, scratch);
+            if (!savedRoot.equals(new File(rootPath).getAbsolutePath())) return false;
+
+            int count = buffer.getInt(buffer.limit() - Integer.BYTES);
+            if (count <= 0 || count > (buffer.limit() - Integer.BYTES - buffer.position()) / MIN_RECORD) return false;
+            @NotNull List<NaryTree.Node<FileMetadata>> nodes = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                int parentIndex = buffer.getInt();
+                byte flags = buffer.get();
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                long listedAt = (flags & FLAG_LISTED) != 0 ? buffer.getLong() : 0;
+                @NotNull String name = readName(buffer, scratch);
+                boolean isDirectory = (flags & FLAG_DIRECTORY) != 0;
+                boolean isSymbolicLink = (flags & FLAG_SYMBOLIC_LINK) != 0;
+
+                // only the first record is the root; every other one names an earlier record
+                if ((i == 0) != (parentIndex < 0) || parentIndex >= i) return false;
+
+                @NotNull NaryTree.Node<FileMetadata> node;
+                if (parentIndex < 0) {
+                    @Nullable Path rootName = Path.of(savedRoot).getFileName();
+                    node = build.restoreRoot(new FileMetadata(rootName != null ? rootName.toString() : "", savedRoot,
+                            isDirectory, isSymbolicLink, size, modified));
+                } else {
+                    @NotNull NaryTree.Node<FileMetadata> parent = nodes.get(parentIndex);
+                    @NotNull String parentPath = parent.getValue().getAbsolutePath();
+                    @NotNull String path = parentPath.endsWith(File.separator)
+                            ? parentPath + name
+                            : parentPath + File.separator + name;
+                    node = build.restoreChild(parent, new FileMetadata(name, path, isDirectory, isSymbolicLink, size, modified));
+                }
+
+                if ((flags & FLAG_LISTED) != 0) {
+                    build.restoreListing(node, listedAt);
+                }
+                nodes.add(node);
+            }
+            return !nodes.isEmpty();
+        } catch (IOException | RuntimeException e) {
+            // anything from a truncated buffer to an impossible record: not a usable snapshot
+            return false;
+        }
+    }
+
+    private static void writeName(@NotNull DataOutputStream out, @NotNull String name) throws IOException {
+        @NotNull byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @NotNull String readName(@NotNull MappedByteBuffer buffer, @NotNull byte[] scratch) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        @NotNull byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,143 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the expanded part of a {@link BuildTree} in sync with changes made by other processes.
+ * <p>
+ * Every listed directory is registered with a {@link WatchService}. A background thread turns
+ * the events into a set of dirty directories and publishes them only after a quiet period, so
+ * a burst (a {@code git checkout}, an unpacked archive) collapses into one entry per directory.
+ * Under a steady stream of events, such as a running build, a batch is published anyway once it
+ * is {@value #MAX_BATCH_MILLIS} ms old or holds {@value #MAX_BATCH_SIZE} directories.
+ * The dirty directories are re-listed by {@link #applyPending()}, which the shell calls before
+ * each command, so the tree is never changed while a command is walking it.
+ */
+public final class TreeWatcher implements BuildTree.Listener, Closeable {
+    private static final long QUIET_MILLIS = 100;
+    private static final long MAX_BATCH_MILLIS = 500;
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final @NotNull BuildTree build;
+    private final @NotNull WatchService service;
+    private final @NotNull Map<WatchKey, String> keys = new ConcurrentHashMap<>();
+    private final @NotNull Map<String, WatchKey> paths = new ConcurrentHashMap<>();
+    private final @NotNull Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final @NotNull Thread thread;
+
+    public TreeWatcher(@NotNull BuildTree build) throws IOException {
+        this.build = build;
+        this.service = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::loop, "tree-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        build.addListener(this);
+        for (@NotNull NaryTree.Node<FileMetadata> directory : build.getListedDirectories()) {
+            onListed(directory);
+        }
+        thread.start();
+    }
+
+    public int getWatchedCount() {
+        return keys.size();
+    }
+
+    /**
+     * Re-lists every directory that changed since the last call, once per directory.
+     *
+     * @return the number of directories refreshed
+     */
+    public int applyPending() {
+        int applied = 0;
+        for (@NotNull String path : pending) {
+            pending.remove(path);
+            @Nullable NaryTree.Node<FileMetadata> node = build.find(path);
+            if (node != null) {
+                build.refresh(node);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public void onListed(@NotNull NaryTree.Node<FileMetadata> directory) {
+        @NotNull String path = directory.getValue().getAbsolutePath();
+        try {
+            @NotNull WatchKey key = Path.of(path).register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            keys.put(key, path);
+            paths.put(path, key);
+        } catch (IOException | ClosedWatchServiceException ignored) {
+            // the directory is gone or the watcher is closing; nothing to follow
+        }
+    }
+
+    @Override
+    public void onForgotten(@NotNull NaryTree.Node<FileMetadata> directory) {
+        @Nullable WatchKey key = paths.remove(directory.getValue().getAbsolutePath());
+        if (key != null) {
+            keys.remove(key);
+            key.cancel();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        build.removeListener(this);
+        service.close();
+        thread.interrupt();
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                @NotNull Set<String> batch = new HashSet<>();
+                @Nullable WatchKey key = service.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_MILLIS);
+                while (key != null) {
+                    collect(key, batch);
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0 || batch.size() >= MAX_BATCH_SIZE) break;
+                    key = service.poll(Math.min(TimeUnit.MILLISECONDS.toNanos(QUIET_MILLIS), left), TimeUnit.NANOSECONDS);
+                }
+                pending.addAll(batch);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void collect(@NotNull WatchKey key, @NotNull Set<String> batch) {
+        // every event kind, including OVERFLOW, is answered the same way: re-list the directory
+        key.pollEvents();
+        @Nullable String path = keys.get(key);
+        if (path != null) {
+            batch.add(path);
+        }
+        if (!key.reset() && path != null) {
+            keys.remove(key);
+            paths.remove(path);
+        }
+    }
+}
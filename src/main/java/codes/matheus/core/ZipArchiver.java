@@ -0,0 +1,636 @@
+package codes.matheus.core;
+
+import codes.matheus.datastructures.tree.NaryTree;
+import codes.matheus.util.Metrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Creates and extracts ZIP archives using every core.
+ * <p>
+ * {@link #zip} is a three-stage pipeline. A reader thread walks the {@link BuildTree} subtree and
+ * cuts each file into fixed-size chunks, updating the entry's CRC as it goes. A pool of
+ * {@link Deflater} workers compresses the chunks independently: every chunk but the last of an
+ * entry ends on a sync flush, so the raw deflate streams can simply be concatenated. The calling
+ * thread is the single writer; it takes the compressed chunks in order from a bounded queue and
+ * lays out local headers, data descriptors, the central directory and, when sizes, offsets or the
+ * entry count require it, the ZIP64 records.
+ * <p>
+ * Hidden entries are not in the tree, so the reader takes them from the hidden listings the tree
+ * keeps and reads whatever is below a hidden directory straight from disk.
+ * <p>
+ * {@link #unzip} reads the central directory once and extracts the entries in parallel. It never
+ * replaces existing files unless asked to.
+ */
+public final class ZipArchiver {
+    private static final int CHUNK = 1 << 20;
+    private static final long ZIP64_THRESHOLD = 0xF0000000L;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+
+    private static final int FLAG_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION_DEFLATE = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int MADE_BY_UNIX = 3 << 8;
+
+    private final int threads;
+    private final int level;
+
+    public ZipArchiver(int threads, int level) {
+        this.threads = threads;
+        this.level = level;
+    }
+
+    /**
+     * Archives {@code root} (a file or a directory and everything below it) into {@code archive}.
+     * Entry names start with the root's own name.
+     */
+    public @NotNull Stats zip(@NotNull BuildTree build, @NotNull NaryTree.Node<FileMetadata> root, @NotNull Path archive) throws IOException {
+        @NotNull ExecutorService workers = Executors.newFixedThreadPool(threads);
+        @NotNull BlockingQueue<Item> queue = new ArrayBlockingQueue<>(threads * 4);
+        // every worker's deflater, so their native memory is released when the archive is done
+        @NotNull Queue<Deflater> created = new ConcurrentLinkedQueue<>();
+        @NotNull ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> {
+            @NotNull Deflater deflater = new Deflater(level, true);
+            created.add(deflater);
+            return deflater;
+        });
+        @NotNull Thread reader = new Thread(() -> read(build, root, archive.toAbsolutePath().toString(), queue, workers, deflaters), "zip-reader");
+
+        @NotNull Stats stats = new Stats();
+        reader.start();
+        try (@NotNull Writer writer = new Writer(archive)) {
+            @Nullable Entry entry = null;
+            while (true) {
+                @NotNull Item item = queue.take();
+                if (item instanceof Failure failure) {
+                    throw failure.cause;
+                } else if (item instanceof Entry next) {
+                    entry = next;
+                    writer.startEntry(entry);
+                } else if (item instanceof Chunk chunk) {
+                    @NotNull byte[] compressed = chunk.data.get();
+                    writer.write(compressed);
+                    Objects.requireNonNull(entry).compressed += compressed.length;
+                } else if (item instanceof EntryEnd end) {
+                    Objects.requireNonNull(entry).crc = end.crc;
+                    entry.size = end.size;
+                    writer.endEntry(entry);
+                    stats.add(entry);
+                } else {
+                    break;
+                }
+            }
+            writer.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing " + archive, e);
+        } catch (ExecutionException e) {
+            throw new IOException("compression failed: " + e.getCause().getLocalizedMessage(), e.getCause());
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+            end(workers, created);
+        }
+        return stats;
+    }
+
+    private static void end(@NotNull ExecutorService workers, @NotNull Queue<Deflater> deflaters) {
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) return;
+        } catch (InterruptedException e) {
+            // a worker may still be deflating; its deflater is left to the garbage collector
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (@NotNull Deflater deflater : deflaters) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Extracts {@code archive} into {@code target}, writing the entries concurrently. Unless
+     * {@code overwrite} is set, nothing is extracted if any file of the archive already exists.
+     *
+     * @throws FileAlreadyExistsException if files exist and {@code overwrite} is not set
+     */
+    public @NotNull Stats unzip(@NotNull Path archive, @NotNull Path target, boolean overwrite) throws IOException {
+        @NotNull Path base = target.toAbsolutePath().normalize();
+        @NotNull Stats stats = new Stats();
+
+        try (@NotNull ZipFile zip = new ZipFile(archive.toFile(), StandardCharsets.UTF_8)) {
+            @NotNull List<? extends ZipEntry> entries = Collections.list(zip.entries());
+            @NotNull List<ZipEntry> files = new ArrayList<>();
+
+            if (!overwrite) {
+                @NotNull List<Path> conflicts = new ArrayList<>();
+                for (@NotNull ZipEntry entry : entries) {
+                    @NotNull Path destination = resolve(base, entry.getName());
+                    if (!entry.isDirectory() && Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+                        conflicts.add(destination);
+                    }
+                }
+                if (!conflicts.isEmpty()) {
+                    throw new FileAlreadyExistsException(conflicts.get(0).toString(), null,
+                            conflicts.size() + " entries already exist (use --overwrite to replace them)");
+                }
+            }
+
+            for (@NotNull ZipEntry entry : entries) {
+                @NotNull Path destination = resolve(base, entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(destination);
+                } else {
+                    @Nullable Path parent = destination.getParent();
+                    if (parent != null) Files.createDirectories(parent);
+                    files.add(entry);
+                }
+            }
+
+            @NotNull ExecutorService workers = Executors.newFixedThreadPool(threads);
+            try {
+                @NotNull List<Future<?>> pending = new ArrayList<>(files.size());
+                for (@NotNull ZipEntry entry : files) {
+                    pending.add(workers.submit(() -> {
+                        extract(zip, entry, resolve(base, entry.getName()), overwrite);
+                        stats.files.incrementAndGet();
+                        stats.bytes.addAndGet(entry.getSize());
+                        stats.compressed.addAndGet(entry.getCompressedSize());
+                        return null;
+                    }));
+                }
+                for (@NotNull Future<?> future : pending) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while extracting " + archive, e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            } finally {
+                workers.shutdownNow();
+            }
+
+            for (@NotNull ZipEntry entry : entries) {
+                if (entry.isDirectory()) {
+                    stats.directories.incrementAndGet();
+                    Files.setLastModifiedTime(resolve(base, entry.getName()), entry.getLastModifiedTime());
+                }
+            }
+        }
+        return stats;
+    }
+
+    private static void extract(@NotNull ZipFile zip, @NotNull ZipEntry entry, @NotNull Path destination, boolean overwrite) throws IOException {
+        // CREATE_NEW also catches a file that appeared after the conflict check
+        @NotNull OpenOption[] options = overwrite
+                ? new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE}
+                : new OpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE};
+        try (@NotNull InputStream in = zip.getInputStream(entry);
+             @NotNull OutputStream out = Files.newOutputStream(destination, options)) {
+            in.transferTo(out);
+        }
+        @Nullable FileTime modified = entry.getLastModifiedTime();
+        if (modified != null) {
+            Files.setLastModifiedTime(destination, modified);
+        }
+    }
+
+    private static @NotNull Path resolve(@NotNull Path base, @NotNull String name) throws IOException {
+        @NotNull Path destination = base.resolve(name).normalize();
+        if (!destination.startsWith(base)) {
+            throw new IOException("entry " + name + " would be extracted outside " + base);
+        }
+        return destination;
+    }
+
+    // Reader stage
+
+    private void read(@NotNull BuildTree build, @NotNull NaryTree.Node<FileMetadata> root, @NotNull String archivePath,
+                      @NotNull BlockingQueue<Item> queue, @NotNull ExecutorService workers, @NotNull ThreadLocal<Deflater> deflaters) {
+        try {
+            @Nullable Path rootParent = Path.of(root.getValue().getAbsolutePath()).getParent();
+            @NotNull Deque<NaryTree.Node<FileMetadata>> stack = new ArrayDeque<>();
+            stack.push(root);
+
+            while (!stack.isEmpty()) {
+                @NotNull NaryTree.Node<FileMetadata> node = stack.pop();
+                @NotNull FileMetadata meta = node.getValue();
+                if (meta.getAbsolutePath().equals(archivePath)) continue;
+
+                @NotNull Path path = Path.of(meta.getAbsolutePath());
+                @NotNull String name = entryName(rootParent, path);
+
+                if (meta.isDirectory()) {
+                    queue.put(new Entry(name + "/", true, meta.getLastModified(), false));
+                    queue.put(new EntryEnd(0, 0));
+                    if (meta.isSymbolicLink()) continue;
+
+                    build.fetchChildren(node);
+                    for (@NotNull FileMetadata hidden : build.getHiddenEntries(node)) {
+                        readHidden(hidden, rootParent, archivePath, queue, workers, deflaters);
+                    }
+                    @NotNull List<NaryTree.Node<FileMetadata>> children = node.getChildren();
+                    for (int i = children.size() - 1; i >= 0; i--) {
+                        stack.push(children.get(i));
+                    }
+                } else {
+                    readFile(path, name, meta, queue, workers, deflaters);
+                }
+            }
+            queue.put(Done.INSTANCE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            try {
+                queue.put(new Failure(e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Archives a hidden entry, and everything below it if it is a directory, from disk.
+     */
+    private void readHidden(@NotNull FileMetadata meta, @Nullable Path rootParent, @NotNull String archivePath, @NotNull BlockingQueue<Item> queue,
+                            @NotNull ExecutorService workers, @NotNull ThreadLocal<Deflater> deflaters) throws IOException, InterruptedException {
+        if (meta.getAbsolutePath().equals(archivePath)) return;
+        @NotNull Path path = Path.of(meta.getAbsolutePath());
+        @NotNull String name = entryName(rootParent, path);
+        if (!meta.isDirectory()) {
+            readFile(path, name, meta, queue, workers, deflaters);
+            return;
+        }
+
+        queue.put(new Entry(name + "/", true, meta.getLastModified(), false));
+        queue.put(new EntryEnd(0, 0));
+        if (meta.isSymbolicLink()) return;
+        try (@NotNull DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+            for (@NotNull Path child : children) {
+                readHidden(FileMetadata.of(child), rootParent, archivePath, queue, workers, deflaters);
+            }
+        }
+    }
+
+    private static @NotNull String entryName(@Nullable Path rootParent, @NotNull Path path) {
+        return (rootParent != null ? rootParent.relativize(path) : path).toString().replace('\\', '/');
+    }
+
+    private void readFile(@NotNull Path path, @NotNull String name, @NotNull FileMetadata meta, @NotNull BlockingQueue<Item> queue,
+                          @NotNull ExecutorService workers, @NotNull ThreadLocal<Deflater> deflaters) throws IOException, InterruptedException {
+        try (@NotNull FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            queue.put(new Entry(name, false, meta.getLastModified(), size >= ZIP64_THRESHOLD));
+
+            @NotNull CRC32 crc = new CRC32();
+            long position = 0;
+            do {
+                int length = (int) Math.min(CHUNK, size - position);
+                @NotNull ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                    // keep reading until the chunk is full or the file ended early
+                }
+                @NotNull byte[] data = buffer.array();
+                int read = buffer.position();
+                crc.update(data, 0, read);
+                Metrics.Counter.BYTES_READ.add(read);
+                position += read;
+
+                boolean last = position >= size || read < length;
+                queue.put(new Chunk(workers.submit(() -> compress(deflaters.get(), data, read, last))));
+                if (last) break;
+            } while (true);
+
+            queue.put(new EntryEnd(crc.getValue(), position));
+        }
+    }
+
+    // Compression stage
+
+    private static @NotNull byte[] compress(@NotNull Deflater deflater, @NotNull byte[] data, int length, boolean last) {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        @NotNull byte[] out = new byte[length + (length >> 8) + 64];
+        int size = 0;
+
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (size == out.length) out = Arrays.copyOf(out, out.length * 2);
+                size += deflater.deflate(out, size, out.length - size);
+            }
+        } else {
+            int written;
+            do {
+                if (size == out.length) out = Arrays.copyOf(out, out.length * 2);
+                written = deflater.deflate(out, size, out.length - size, Deflater.SYNC_FLUSH);
+                size += written;
+            } while (size == out.length);
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    // Writer stage
+
+    private static final class Writer implements AutoCloseable {
+        private final @NotNull OutputStream out;
+        private final @NotNull ByteBuffer scratch = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        private final @NotNull List<Entry> written = new ArrayList<>();
+        private long offset;
+
+        private Writer(@NotNull Path archive) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(archive), 1 << 20);
+        }
+
+        private void startEntry(@NotNull Entry entry) throws IOException {
+            entry.offset = offset;
+            @NotNull byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+
+            scratch.clear();
+            scratch.putInt(LOCAL_HEADER);
+            scratch.putShort((short) (entry.zip64 ? VERSION_ZIP64 : VERSION_DEFLATE));
+            scratch.putShort((short) (entry.directory ? FLAG_UTF8 : FLAG_UTF8 | FLAG_DESCRIPTOR));
+            scratch.putShort((short) (entry.directory ? ZipEntry.STORED : ZipEntry.DEFLATED));
+            scratch.putInt(entry.dosTime);
+            scratch.putInt(0);
+            scratch.putInt(entry.zip64 ? -1 : 0);
+            scratch.putInt(entry.zip64 ? -1 : 0);
+            scratch.putShort((short) name.length);
+            scratch.putShort((short) (entry.zip64 ? 20 : 0));
+            flushScratch();
+            write(name);
+
+            if (entry.zip64) {
+                scratch.clear();
+                scratch.putShort((short) 1);
+                scratch.putShort((short) 16);
+                scratch.putLong(0);
+                scratch.putLong(0);
+                flushScratch();
+            }
+        }
+
+        private void endEntry(@NotNull Entry entry) throws IOException {
+            written.add(entry);
+            if (entry.directory) return;
+
+            scratch.clear();
+            scratch.putInt(DATA_DESCRIPTOR);
+            scratch.putInt((int) entry.crc);
+            if (entry.zip64) {
+                scratch.putLong(entry.compressed);
+                scratch.putLong(entry.size);
+            } else {
+                scratch.putInt((int) entry.compressed);
+                scratch.putInt((int) entry.size);
+            }
+            flushScratch();
+        }
+
+        private void finish() throws IOException {
+            long start = offset;
+            for (@NotNull Entry entry : written) {
+                writeCentral(entry);
+            }
+            long size = offset - start;
+
+            boolean zip64 = written.size() >= MAX_16 || start >= MAX_32 || size >= MAX_32;
+            if (zip64) {
+                long record = offset;
+                scratch.clear();
+                scratch.putInt(ZIP64_END);
+                scratch.putLong(44);
+                scratch.putShort((short) (MADE_BY_UNIX | VERSION_ZIP64));
+                scratch.putShort((short) VERSION_ZIP64);
+                scratch.putInt(0);
+                scratch.putInt(0);
+                scratch.putLong(written.size());
+                scratch.putLong(written.size());
+                scratch.putLong(size);
+                scratch.putLong(start);
+                flushScratch();
+
+                scratch.clear();
+                scratch.putInt(ZIP64_LOCATOR);
+                scratch.putInt(0);
+                scratch.putLong(record);
+                scratch.putInt(1);
+                flushScratch();
+            }
+
+            scratch.clear();
+            scratch.putInt(END);
+            scratch.putShort((short) 0);
+            scratch.putShort((short) 0);
+            scratch.putShort((short) Math.min(written.size(), MAX_16));
+            scratch.putShort((short) Math.min(written.size(), MAX_16));
+            scratch.putInt((int) Math.min(size, MAX_32));
+            scratch.putInt((int) Math.min(start, MAX_32));
+            scratch.putShort((short) 0);
+            flushScratch();
+        }
+
+        private void writeCentral(@NotNull Entry entry) throws IOException {
+            @NotNull byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            boolean bigSize = entry.size >= MAX_32 || entry.compressed >= MAX_32;
+            boolean bigOffset = entry.offset >= MAX_32;
+            int extra = (bigSize ? 16 : 0) + (bigOffset ? 8 : 0);
+
+            scratch.clear();
+            scratch.putInt(CENTRAL_HEADER);
+            scratch.putShort((short) (MADE_BY_UNIX | VERSION_ZIP64));
+            scratch.putShort((short) (entry.zip64 || extra > 0 ? VERSION_ZIP64 : VERSION_DEFLATE));
+            scratch.putShort((short) (entry.directory ? FLAG_UTF8 : FLAG_UTF8 | FLAG_DESCRIPTOR));
+            scratch.putShort((short) (entry.directory ? ZipEntry.STORED : ZipEntry.DEFLATED));
+            scratch.putInt(entry.dosTime);
+            scratch.putInt((int) entry.crc);
+            scratch.putInt(bigSize ? -1 : (int) entry.compressed);
+            scratch.putInt(bigSize ? -1 : (int) entry.size);
+            scratch.putShort((short) name.length);
+            scratch.putShort((short) (extra > 0 ? extra + 4 : 0));
+            scratch.putShort((short) 0);
+            scratch.putShort((short) 0);
+            scratch.putShort((short) 0);
+            scratch.putInt(entry.directory ? (040755 << 16) | 0x10 : 0100644 << 16);
+            scratch.putInt(bigOffset ? -1 : (int) entry.offset);
+            flushScratch();
+            write(name);
+
+            if (extra > 0) {
+                scratch.clear();
+                scratch.putShort((short) 1);
+                scratch.putShort((short) extra);
+                if (bigSize) {
+                    scratch.putLong(entry.size);
+                    scratch.putLong(entry.compressed);
+                }
+                if (bigOffset) {
+                    scratch.putLong(entry.offset);
+                }
+                flushScratch();
+            }
+        }
+
+        private void flushScratch() throws IOException {
+            write(scratch.array(), scratch.position());
+        }
+
+        private void write(@NotNull byte[] data) throws IOException {
+            write(data, data.length);
+        }
+
+        private void write(@NotNull byte[] data, int length) throws IOException {
+            out.write(data, 0, length);
+            offset += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    // Classes
+
+    public static final class Stats {
+        private final @NotNull AtomicLong files = new AtomicLong();
+        private final @NotNull AtomicLong directories = new AtomicLong();
+        private final @NotNull AtomicLong bytes = new AtomicLong();
+        private final @NotNull AtomicLong compressed = new AtomicLong();
+
+        private void add(@NotNull Entry entry) {
+            if (entry.directory) {
+                directories.incrementAndGet();
+            } else {
+                files.incrementAndGet();
+                bytes.addAndGet(entry.size);
+                compressed.addAndGet(entry.compressed);
+            }
+        }
+
+        public long getFiles() {
+            return files.get();
+        }
+
+        public long getDirectories() {
+            return directories.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getCompressedBytes() {
+            return compressed.get();
+        }
+    }
+
+    private interface Item {
+    }
+
+    private static final class Entry implements Item {
+        private final @NotNull String name;
+        private final boolean directory;
+        private final int dosTime;
+        private final boolean zip64;
+        private long offset;
+        private long compressed;
+        private long size;
+        private long crc;
+
+        private Entry(@NotNull String name, boolean directory, long modified, boolean zip64) {
+            this.name = name;
+            this.directory = directory;
+            this.dosTime = dosTime(modified);
+            this.zip64 = zip64;
+        }
+
+        private static int dosTime(long millis) {
+            @NotNull LocalDateTime time = LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+            if (time.getYear() < 1980) {
+                return (1 << 21) | (1 << 16);
+            }
+            return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                    | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+        }
+    }
+
+    private static final class Chunk implements Item {
+        private final @NotNull Future<byte[]> data;
+
+        private Chunk(@NotNull Future<byte[]> data) {
+            this.data = data;
+        }
+    }
+
+    private static final class EntryEnd implements Item {
+        private final long crc;
+        private final long size;
+
+        private EntryEnd(long crc, long size) {
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    private static final class Failure implements Item {
+        private final @NotNull IOException cause;
+
+        private Failure(@NotNull IOException cause) {
+            this.cause = cause;
+        }
+    }
+
+    private enum Done implements Item {
+        INSTANCE
+    }
+}
@@ -17,7 +17,21 @@ public final class Colors {
     public static final String CYAN    = "\033[1;96m";
     public static final String WHITE   = "\033[1;97m";
 
+    private static volatile boolean enabled = true;
+
+    /**
+     * Turns coloring on or off; while off, {@link #format} returns the text unchanged.
+     */
+    public static void setEnabled(boolean enabled) {
+        Colors.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
     public static @NotNull String format(String text, String colorCode) {
+        if (!enabled) return text;
         return colorCode + text + RESET;
     }
 }
@@ -0,0 +1,173 @@
+package codes.matheus.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide instrumentation: a latency histogram per command action and a few counters for
+ * the work behind the commands (listings, stats, nodes, bytes). Every update is a single lock-free
+ * increment, so recording costs next to nothing and is always on.
+ */
+public final class Metrics {
+    private Metrics() {
+        throw new UnsupportedOperationException("this class cannot be instantiated");
+    }
+
+    private static final @NotNull Map<String, Histogram> COMMANDS = new ConcurrentHashMap<>();
+
+    public static @NotNull Histogram command(@NotNull String action) {
+        return COMMANDS.computeIfAbsent(action, key -> new Histogram());
+    }
+
+    /**
+     * The command histograms recorded so far, by action.
+     */
+    public static @NotNull Map<String, Histogram> commands() {
+        return new TreeMap<>(COMMANDS);
+    }
+
+    public static void reset() {
+        COMMANDS.clear();
+        for (@NotNull Counter counter : Counter.values()) {
+            counter.adder.reset();
+        }
+    }
+
+    public static @NotNull String toJson() {
+        @NotNull StringBuilder json = new StringBuilder("{\n  \"commands\": {");
+        boolean first = true;
+        for (@NotNull Map.Entry<String, Histogram> entry : commands().entrySet()) {
+            @NotNull Histogram histogram = entry.getValue();
+            json.append(first ? "\n" : ",\n").append("    \"").append(entry.getKey()).append("\": {")
+                    .append("\"count\": ").append(histogram.getCount())
+                    .append(", \"meanNanos\": ").append(histogram.getMean())
+                    .append(", \"p50Nanos\": ").append(histogram.getPercentile(50))
+                    .append(", \"p90Nanos\": ").append(histogram.getPercentile(90))
+                    .append(", \"p99Nanos\": ").append(histogram.getPercentile(99))
+                    .append(", \"maxNanos\": ").append(histogram.getMax())
+                    .append('}');
+            first = false;
+        }
+        json.append(first ? "},\n" : "\n  },\n").append("  \"counters\": {");
+        first = true;
+        for (@NotNull Counter counter : Counter.values()) {
+            json.append(first ? "\n" : ",\n").append("    \"").append(counter.getKey()).append("\": ").append(counter.get());
+            first = false;
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    // Classes
+
+    public enum Counter {
+        DIRECTORIES_LISTED("directoriesListed"),
+        LISTING_NANOS("listingNanos"),
+        STAT_CALLS("statCalls"),
+        NODES_CREATED("nodesCreated"),
+        BYTES_READ("bytesRead");
+
+        private final @NotNull String key;
+        private final @NotNull LongAdder adder = new LongAdder();
+
+        Counter(@NotNull String key) {
+            this.key = key;
+        }
+
+        public @NotNull String getKey() {
+            return key;
+        }
+
+        public void increment() {
+            adder.increment();
+        }
+
+        public void add(long amount) {
+            adder.add(amount);
+        }
+
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    /**
+     * A histogram of non-negative values in log-linear buckets, in the style of HdrHistogram:
+     * values below {@code 2^PRECISION} get a bucket each, and every power of two above that is
+     * split into {@code 2^PRECISION} equal buckets, which bounds the relative error of any
+     * reported percentile to about 3%.
+     */
+    public static final class Histogram {
+        private static final int PRECISION = 5;
+        private static final int SUB_BUCKETS = 1 << PRECISION;
+        private static final int BUCKETS = (64 - PRECISION) * SUB_BUCKETS;
+
+        private final @NotNull AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final @NotNull LongAdder count = new LongAdder();
+        private final @NotNull LongAdder sum = new LongAdder();
+        private final @NotNull AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            long clamped = Math.max(0, value);
+            buckets.incrementAndGet(index(clamped));
+            count.increment();
+            sum.add(clamped);
+            max.accumulateAndGet(clamped, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public long getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        /**
+         * The value below which {@code percentile} percent of the recorded values fall, reported
+         * as the middle of its bucket and never above the maximum.
+         */
+        public long getPercentile(double percentile) {
+            long total = count.sum();
+            if (total == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    long low = lowerBound(i);
+                    long high = lowerBound(i + 1);
+                    return Math.min(low + (high - low) / 2, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int mantissa = (int) (value >>> (exponent - PRECISION)) - SUB_BUCKETS;
+            return (exponent - PRECISION + 1) * SUB_BUCKETS + mantissa;
+        }
+
+        private static long lowerBound(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int group = index / SUB_BUCKETS;
+            int mantissa = index % SUB_BUCKETS;
+            int exponent = group + PRECISION - 1;
+            if (exponent >= 63) return Long.MAX_VALUE;
+            return (long) (SUB_BUCKETS + mantissa) << (exponent - PRECISION);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package codes.matheus.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.PrintStream;
+
+/**
+ * Collects output lines from any number of threads and writes them to the target stream in large
+ * batches, instead of one synchronized, auto-flushing write per line. Colors are appended around
+ * the text in place rather than concatenated into a new string, and are left out entirely while
+ * {@link Colors} is disabled.
+ * <p>
+ * Every thread has a sink of its own, returned by {@link #current()}, whose buffer is reused from
+ * one command to the next. {@link #open(PrintStream)} points it at the stream a command should
+ * write to and the command's caller flushes it once the command returns; pass the sink itself to
+ * any worker threads that print, as they have sinks of their own.
+ * <p>
+ * Errors are the lines printed in {@link Colors#RED}; the sink counts them so a caller can tell
+ * whether a command failed.
+ */
+public final class OutputSink {
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final @NotNull String NEWLINE = System.lineSeparator();
+    private static final @NotNull ThreadLocal<OutputSink> CURRENT = ThreadLocal.withInitial(() -> new OutputSink(null));
+
+    /**
+     * The calling thread's sink.
+     */
+    public static @NotNull OutputSink current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Flushes the calling thread's sink and points it at {@code target}.
+     */
+    public static @NotNull OutputSink open(@NotNull PrintStream target) {
+        @NotNull OutputSink sink = CURRENT.get();
+        sink.flush();
+        sink.target = target;
+        return sink;
+    }
+
+    // Objects
+
+    // null writes to whatever System.out is when flushing
+    private volatile @Nullable PrintStream target;
+    private final @NotNull StringBuilder buffer;
+    private final int capacity;
+    private long errors;
+
+    public OutputSink(@Nullable PrintStream target) {
+        this(target, DEFAULT_CAPACITY);
+    }
+
+    public OutputSink(@Nullable PrintStream target, int capacity) {
+        this.target = target;
+        this.capacity = capacity;
+        this.buffer = new StringBuilder(capacity + 256);
+    }
+
+    public synchronized @NotNull OutputSink print(@NotNull CharSequence text) {
+        buffer.append(text);
+        return overflow();
+    }
+
+    public synchronized @NotNull OutputSink print(@NotNull CharSequence text, @NotNull String color) {
+        colored(text, color);
+        return overflow();
+    }
+
+    public synchronized @NotNull OutputSink println() {
+        buffer.append(NEWLINE);
+        return overflow();
+    }
+
+    public synchronized @NotNull OutputSink println(@NotNull CharSequence line) {
+        buffer.append(line).append(NEWLINE);
+        return overflow();
+    }
+
+    public synchronized @NotNull OutputSink println(@NotNull CharSequence line, @NotNull String color) {
+        colored(line, color);
+        buffer.append(NEWLINE);
+        return overflow();
+    }
+
+    /**
+     * Appends {@code prefix} followed by {@code text} as one colored line, so callers on hot paths
+     * do not have to concatenate the two first.
+     */
+    public synchronized @NotNull OutputSink println(@NotNull CharSequence prefix, @NotNull CharSequence text, @NotNull String color) {
+        if (color.equals(Colors.RED)) errors++;
+        if (Colors.isEnabled()) buffer.append(color);
+        buffer.append(prefix).append(text);
+        if (Colors.isEnabled()) buffer.append(Colors.RESET);
+        buffer.append(NEWLINE);
+        return overflow();
+    }
+
+    public synchronized @NotNull OutputSink printf(@NotNull String format, @Nullable Object... args) {
+        buffer.append(String.format(format, args));
+        return overflow();
+    }
+
+    /**
+     * The number of errors printed to this sink so far.
+     */
+    public synchronized long getErrorCount() {
+        return errors;
+    }
+
+    public synchronized void flush() {
+        @NotNull PrintStream out = target != null ? target : System.out;
+        if (buffer.length() > 0) {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+        out.flush();
+    }
+
+    private void colored(@NotNull CharSequence text, @NotNull String color) {
+        if (color.equals(Colors.RED)) errors++;
+        if (!Colors.isEnabled()) {
+            buffer.append(text);
+            return;
+        }
+        buffer.append(color).append(text).append(Colors.RESET);
+    }
+
+    private @NotNull OutputSink overflow() {
+        if (buffer.length() >= capacity) {
+            flush();
+        }
+        return this;
+    }
+}
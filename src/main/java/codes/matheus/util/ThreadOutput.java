@@ -0,0 +1,85 @@
+package codes.matheus.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Lets a thread redirect everything it prints through {@code System.out} without affecting other
+ * threads. Once {@link #install()} has run, {@code System.out} forwards each write to the stream
+ * bound to the writing thread, or to the real standard output if none is bound. Threads started
+ * while a stream is bound inherit it, so the worker pools a command creates print to the same place
+ * as the command itself.
+ */
+public final class ThreadOutput {
+    private ThreadOutput() {
+        throw new UnsupportedOperationException("this class cannot be instantiated");
+    }
+
+    private static final @NotNull InheritableThreadLocal<PrintStream> TARGET = new InheritableThreadLocal<>();
+    private static @Nullable PrintStream original;
+
+    public static synchronized void install() {
+        if (original != null) return;
+        @NotNull PrintStream stdout = System.out;
+        original = stdout;
+        System.setOut(new PrintStream(new Router(stdout), true));
+    }
+
+    /**
+     * The stream the current thread's output ends up in: the bound stream if there is one, and
+     * {@code System.out} otherwise.
+     */
+    public static @NotNull PrintStream current() {
+        @Nullable PrintStream target = TARGET.get();
+        return target != null ? target : System.out;
+    }
+
+    /**
+     * Runs {@code action} with everything the current thread prints going to {@code target}.
+     */
+    public static void capture(@NotNull OutputStream target, @NotNull Runnable action) {
+        @Nullable PrintStream previous = TARGET.get();
+        @NotNull PrintStream stream = new PrintStream(target, false);
+        TARGET.set(stream);
+        try {
+            action.run();
+        } finally {
+            stream.flush();
+            TARGET.set(previous);
+        }
+    }
+
+    // Classes
+
+    private static final class Router extends OutputStream {
+        private final @NotNull OutputStream fallback;
+
+        private Router(@NotNull OutputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private @NotNull OutputStream target() {
+            @Nullable PrintStream target = TARGET.get();
+            return target != null ? target : fallback;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+}